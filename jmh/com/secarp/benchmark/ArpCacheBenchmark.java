@@ -0,0 +1,95 @@
+package com.secarp.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.protocol.arp.ArpCache;
+
+/**
+ * Benchmarks put, lookup and getMap of every ArpCache implementation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArpCacheBenchmark {
+    // The cache implementation, see ArpCache.create()
+    @Param({"hashmap", "open", "concurrent"})
+    public String implementation;
+
+    // The number of entries in the cache
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    // The cache under test
+    private ArpCache arpCache;
+
+    // The cached IPs and their MACs
+    private Ipv4Address[] ipv4Addresses;
+    private MacAddress[] macAddresses;
+
+    /**
+     * Fills the cache
+     */
+    @Setup
+    public void setup() {
+        this.arpCache = ArpCache.create(this.implementation, 3600);
+        this.ipv4Addresses = new Ipv4Address[this.entries];
+        this.macAddresses = new MacAddress[this.entries];
+        for (int i = 0; i < this.entries; i++) {
+            this.ipv4Addresses[i] = Ipv4Address.valueOf(0x0A000000 + i);
+            this.macAddresses[i] = MacAddress.valueOf(0x020000000000L + i);
+            this.arpCache.put(this.ipv4Addresses[i], this.macAddresses[i]);
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        int i = ThreadLocalRandom.current().nextInt(this.entries);
+        this.arpCache.put(this.ipv4Addresses[i], this.macAddresses[i]);
+    }
+
+    @Benchmark
+    public MacAddress lookup() {
+        int i = ThreadLocalRandom.current().nextInt(this.entries);
+        return this.arpCache.lookup(this.ipv4Addresses[i]);
+    }
+
+    @Benchmark
+    public Map<Ipv4Address, MacAddress> getMap() {
+        return this.arpCache.getMap();
+    }
+
+    /**
+     * Lookups racing with puts, one put every eight operations
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MacAddress contended() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(this.entries);
+        if (random.nextInt(8) == 0) {
+            this.arpCache.put(this.ipv4Addresses[i], this.macAddresses[i]);
+            return null;
+        }
+        return this.arpCache.lookup(this.ipv4Addresses[i]);
+    }
+}
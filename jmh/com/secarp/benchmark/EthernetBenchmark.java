@@ -0,0 +1,105 @@
+package com.secarp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.device.Node;
+import com.secarp.network.Ethernet;
+import com.secarp.network.Network;
+import com.secarp.protocol.Packet;
+import com.secarp.scheduler.Scheduler;
+
+/**
+ * Benchmarks broadcast and unicast delivery in Ethernet.sendPacket
+ * The scheduler drops the receive tasks, so only the fan-out is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EthernetBenchmark {
+    // The number of nodes on the segment
+    @Param({"10", "1000", "100000"})
+    public int nodes;
+
+    // The network under test
+    private Network network;
+
+    // The packet being sent
+    private Packet packet;
+
+    // The MAC address of the last node
+    private MacAddress lastMacAddress;
+
+    /**
+     * Counts scheduled tasks instead of running them
+     */
+    private static class DiscardingScheduler extends Scheduler {
+        // The number of tasks scheduled so far
+        long scheduledTasks;
+
+        @Override
+        public long getCurrentTimeInMillis() {
+            return 0;
+        }
+
+        @Override
+        public void schedule(Node node, long delay, Runnable task) {
+            this.scheduledTasks++;
+        }
+
+        @Override
+        public boolean supportsBlocking() {
+            return false;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    /**
+     * Builds the segment once per trial, adding the nodes in bulk
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        this.network = new Ethernet(10, new DiscardingScheduler());
+        List<Node> newNodes = new ArrayList<Node>(this.nodes);
+        for (int i = 0; i < this.nodes; i++) {
+            newNodes.add(new Node(Ipv4Address.valueOf(0x0A000000 + i),
+                                  MacAddress.valueOf(0x020000000000L + i)));
+        }
+        this.network.addNodes(newNodes);
+        this.lastMacAddress = MacAddress.valueOf(
+            0x020000000000L + this.nodes - 1);
+        this.packet = new Packet("benchmark-payload".getBytes());
+    }
+
+    @Benchmark
+    public void broadcast() {
+        this.network.sendPacket(0, this.packet, MacAddress.getBroadcast());
+    }
+
+    @Benchmark
+    public void unicast() {
+        this.network.sendPacket(0, this.packet, this.lastMacAddress);
+    }
+}
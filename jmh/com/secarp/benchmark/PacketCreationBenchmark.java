@@ -0,0 +1,61 @@
+package com.secarp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.protocol.Packet;
+import com.secarp.protocol.arp.Arp;
+import com.secarp.protocol.secarp.SecArp;
+
+/**
+ * Benchmarks building ARP and SecARP packets
+ * Every packet is released once consumed, so the builders take their packets
+ * and headers from the pool as they do on the flood paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketCreationBenchmark {
+    // Addresses of the two ends
+    private MacAddress senderMac = MacAddress.valueOf("11:11:11:11:11:11");
+    private Ipv4Address senderIp = Ipv4Address.valueOf("1.1.1.1");
+    private MacAddress receiverMac = MacAddress.valueOf("22:22:22:22:22:22");
+    private Ipv4Address receiverIp = Ipv4Address.valueOf("2.2.2.2");
+
+    @Benchmark
+    public void arpRequest(Blackhole blackhole) {
+        Packet packet = Arp.createRequestPacket(this.senderMac,
+                                                this.senderIp,
+                                                this.receiverIp
+                                                );
+        blackhole.consume(packet);
+        packet.release();
+    }
+
+    @Benchmark
+    public void secArpReply(Blackhole blackhole) {
+        Packet packet = SecArp.createReplyPacket(this.senderMac,
+                                                 this.senderIp,
+                                                 this.receiverMac,
+                                                 this.receiverIp,
+                                                 42
+                                                 );
+        blackhole.consume(packet);
+        packet.release();
+    }
+}
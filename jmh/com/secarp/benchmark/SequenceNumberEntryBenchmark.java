@@ -0,0 +1,68 @@
+package com.secarp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.protocol.secarp.SequenceNumberEntry;
+
+/**
+ * Benchmarks reply tallying in SequenceNumberEntry
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceNumberEntryBenchmark {
+    // The number of distinct MACs replying
+    @Param({"1", "2", "16"})
+    public int macs;
+
+    // The entry under test
+    private SequenceNumberEntry sequenceNumberEntry;
+
+    // The replying MACs
+    private MacAddress[] macAddresses;
+
+    // The MAC of the next reply
+    private int next;
+
+    /**
+     * Creates an entry with a reply from every MAC
+     */
+    @Setup
+    public void setup() {
+        this.sequenceNumberEntry =
+            new SequenceNumberEntry(Ipv4Address.valueOf("10.0.0.1"), 0);
+        this.macAddresses = new MacAddress[this.macs];
+        for (int i = 0; i < this.macs; i++) {
+            this.macAddresses[i] = MacAddress.valueOf(0x020000000000L + i);
+            this.sequenceNumberEntry.updateMacCount(this.macAddresses[i]);
+        }
+    }
+
+    @Benchmark
+    public void updateMacCount() {
+        this.sequenceNumberEntry.updateMacCount(this.macAddresses[this.next]);
+        this.next = (this.next + 1) % this.macs;
+    }
+
+    @Benchmark
+    public MacAddress getMacAddressWithMaxCount() {
+        return this.sequenceNumberEntry.getMacAddressWithMaxCount();
+    }
+}
@@ -9,6 +9,7 @@ import com.secarp.network.Network;
 import com.secarp.protocol.Packet;
 import com.secarp.protocol.Protocol;
 import com.secarp.protocol.secarp.SecArp;
+import com.secarp.scheduler.Scheduler;
 
 /**
  * Simulates:
@@ -20,34 +21,35 @@ import com.secarp.protocol.secarp.SecArp;
  */
 public class AttackSecArpSimulator2 {
     public static void main(String args[]) {
-        Network network = new Ethernet(10);
+        Scheduler scheduler = Scheduler.fromSystemProperties();
+        Network network = new Ethernet(10, scheduler);
         Node[] nodes = new Node[4];
         Protocol[] arps = new SecArp[4];
 
-        nodes[0] = new Node(new Ipv4Address("1.1.1.1"),
-                new MacAddress("11:11:11:11:11:11")
+        nodes[0] = new Node(Ipv4Address.valueOf("1.1.1.1"),
+                MacAddress.valueOf("11:11:11:11:11:11")
         );
         network.addNode(nodes[0]);
         arps[0] = new SecArp();
         arps[0].install(nodes[0]);
 
-        nodes[1] = new Node(new Ipv4Address("2.2.2.2"),
-                new MacAddress("22:22:22:22:22:22")
+        nodes[1] = new Node(Ipv4Address.valueOf("2.2.2.2"),
+                MacAddress.valueOf("22:22:22:22:22:22")
         );
         network.addNode(nodes[1]);
         arps[1] = new SecArp();
         arps[1].install(nodes[1]);
 
-        nodes[2] = new AttackerNode(new Ipv4Address("3.3.3.3"),
-                new MacAddress("33:33:33:33:33:33"),
-                new Ipv4Address("1.1.1.1")
+        nodes[2] = new AttackerNode(Ipv4Address.valueOf("3.3.3.3"),
+                MacAddress.valueOf("33:33:33:33:33:33"),
+                Ipv4Address.valueOf("1.1.1.1")
         );
         network.addNode(nodes[2]);
         arps[2] = new SecArp();
         arps[2].install(nodes[2]);
 
-        nodes[3] = new Node(new Ipv4Address("4.4.4.4"),
-                new MacAddress("44:44:44:44:44:44:44")
+        nodes[3] = new Node(Ipv4Address.valueOf("4.4.4.4"),
+                MacAddress.valueOf("44:44:44:44:44:44")
         );
         network.addNode(nodes[3]);
         arps[3] = new SecArp();
@@ -55,6 +57,10 @@ public class AttackSecArpSimulator2 {
 
         // Sending packets
         Packet packet = new Packet("test-payload".getBytes());
-        nodes[0].sendPacket(packet, nodes[1].getIpv4Address());
+        scheduler.execute(nodes[0], () -> {
+            nodes[0].sendPacket(packet, nodes[1].getIpv4Address());
+        });
+
+        scheduler.run();
     }
 }
\ No newline at end of file
@@ -2,36 +2,103 @@ package com.secarp.address;
 
 /**
  * An abstraction for the IPv4 address
+ * The address is packed in an int, most significant byte first. Addresses
+ * are compared by value. valueOf() shares the instances of recently used
+ * addresses through a bounded cache, so it mostly allocates nothing.
  */
 public class Ipv4Address extends Address {
-    // String representation of the address
-    private String address;
+    // The length of an address in bytes
+    public static final int LENGTH = 4;
+
+    // The packed broadcast address, 255.255.255.255
+    private static final int BROADCAST = 0xFFFFFFFF;
+
+    // Number of slots of the cache of shared instances, a power of two
+    private static final int CACHE_SIZE = 1 << 16;
+
+    // The shared instances, each in the slot of the hash of its address
+    // Instances are immutable, so racing writers only cost a lookup miss
+    private static final Ipv4Address[] cache = new Ipv4Address[CACHE_SIZE];
+
+    // Packed representation of the address
+    private final int address;
 
     /**
      * Constructor
+     *
+     * @param address The address in dotted decimal notation
      */
     public Ipv4Address(String address) {
+        this(parse(address));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param address The packed address
+     */
+    public Ipv4Address(int address) {
         this.address = address;
     }
 
+    /**
+     * Returns an instance of an address, shared while it stays cached
+     *
+     * @param address The address in dotted decimal notation
+     *
+     * @return The cached address, or a new one replacing it in the cache
+     */
+    public static Ipv4Address valueOf(String address) {
+        return valueOf(parse(address));
+    }
+
+    /**
+     * Returns an instance of an address, shared while it stays cached
+     *
+     * @param address The packed address
+     *
+     * @return The cached address, or a new one replacing it in the cache
+     */
+    public static Ipv4Address valueOf(int address) {
+        int hash = address * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        Ipv4Address ipv4Address = cache[slot];
+        if (ipv4Address == null || ipv4Address.address != address) {
+            ipv4Address = new Ipv4Address(address);
+            cache[slot] = ipv4Address;
+        }
+        return ipv4Address;
+    }
+
+    /**
+     * Returns the packed representation of the address
+     *
+     * @return The address packed in an int
+     */
+    public int toInt() {
+        return this.address;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean isBroadcast() {
-        if (this.address.equals("255.255.255.255")) {
-            return true;
-        }
-        return false;
+        return this.address == BROADCAST;
     }
 
     /**
      * {@inheritDoc}
+     * The 4 bytes of the address, in network byte order
      */
     @Override
     public byte[] getBytes() {
-        // Simulation purposes, simply convert
-        return this.address.getBytes();
+        return new byte[] {
+            (byte)(this.address >>> 24),
+            (byte)(this.address >>> 16),
+            (byte)(this.address >>> 8),
+            (byte)this.address
+        };
     }
 
     /**
@@ -39,8 +106,7 @@ public class Ipv4Address extends Address {
      */
     @Override
     public String toString() {
-        return String.format("Ipv4 Address: %s",
-                             this.address);
+        return "Ipv4 Address: " + format(this.address);
     }
 
     /**
@@ -51,6 +117,88 @@ public class Ipv4Address extends Address {
      * @return
      */
     public boolean matches(Ipv4Address ipv4Address) {
-        return this.address.equals(ipv4Address.address);
+        return this.address == ipv4Address.address;
+    }
+
+    /**
+     * Checks whether the address belongs to a subnet
+     *
+     * @param ipv4Address Any address of the subnet
+     * @param prefixLength The length of the prefix of the subnet, from 0 to 32
+     *
+     * @return Whether the prefixes of the addresses match
+     */
+    public boolean matches(Ipv4Address ipv4Address, int prefixLength) {
+        if (prefixLength == 0) {
+            return true;
+        }
+        return (this.address ^ ipv4Address.address) >>> (32 - prefixLength)
+            == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Ipv4Address)) {
+            return false;
+        }
+        return this.matches((Ipv4Address)object);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return this.address;
+    }
+
+    /**
+     * Packs an address in dotted decimal notation
+     *
+     * @param address The address, e.g. "10.0.0.1"
+     *
+     * @return The packed address
+     *
+     * @throws IllegalArgumentException If the address is malformed
+     */
+    public static int parse(String address) {
+        String[] parts = address.split("\\.", -1);
+        if (parts.length != LENGTH) {
+            throw new IllegalArgumentException("Invalid Ipv4 address: " +
+                                               address);
+        }
+        int packed = 0;
+        for (String part : parts) {
+            int value;
+            try {
+                value = Integer.parseInt(part);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid Ipv4 address: " +
+                                                   address);
+            }
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("Invalid Ipv4 address: " +
+                                                   address);
+            }
+            packed = (packed << 8) | value;
+        }
+        return packed;
+    }
+
+    /**
+     * Formats a packed address in dotted decimal notation
+     *
+     * @param address The packed address
+     *
+     * @return The address, e.g. "10.0.0.1"
+     */
+    public static String format(int address) {
+        return (address >>> 24) + "." +
+            ((address >>> 16) & 0xFF) + "." +
+            ((address >>> 8) & 0xFF) + "." +
+            (address & 0xFF);
     }
 }
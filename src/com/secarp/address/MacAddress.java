@@ -2,19 +2,83 @@ package com.secarp.address;
 
 /**
  * An abstraction for the MAC address
+ * The 48 bit address is packed in the low bits of a long, first octet most
+ * significant. Addresses are compared by value. valueOf() shares the
+ * instances of recently used addresses through a bounded cache, so it mostly
+ * allocates nothing.
  */
 public class MacAddress extends Address {
-    // String representation of the address
-    private String address;
+    // The length of an address in bytes
+    public static final int LENGTH = 6;
 
-    // The broadcast mac address as String
-    private static final String BROADCAST_STRING = "FF:FF:FF:FF:FF:FF";
+    // The packed broadcast address, FF:FF:FF:FF:FF:FF
+    private static final long BROADCAST = 0xFFFFFFFFFFFFL;
+
+    // Hex digits used for formatting
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Number of slots of the cache of shared instances, a power of two
+    private static final int CACHE_SIZE = 1 << 16;
+
+    // The shared instances, each in the slot of the hash of its address
+    // Instances are immutable, so racing writers only cost a lookup miss
+    private static final MacAddress[] cache = new MacAddress[CACHE_SIZE];
+
+    // The broadcast address
+    private static final MacAddress BROADCAST_ADDRESS = valueOf(BROADCAST);
+
+    // The all zero address, used when the hardware address is unknown
+    private static final MacAddress ZERO_ADDRESS = valueOf(0L);
+
+    // Packed representation of the address
+    private final long address;
 
     /**
      * Constructor
+     *
+     * @param address The address as six colon separated hex octets
      */
     public MacAddress(String address) {
-        this.address = address;
+        this(parse(address));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param address The packed address
+     */
+    public MacAddress(long address) {
+        this.address = address & BROADCAST;
+    }
+
+    /**
+     * Returns an instance of an address, shared while it stays cached
+     *
+     * @param address The address as six colon separated hex octets
+     *
+     * @return The cached address, or a new one replacing it in the cache
+     */
+    public static MacAddress valueOf(String address) {
+        return valueOf(parse(address));
+    }
+
+    /**
+     * Returns an instance of an address, shared while it stays cached
+     *
+     * @param address The packed address
+     *
+     * @return The cached address, or a new one replacing it in the cache
+     */
+    public static MacAddress valueOf(long address) {
+        address &= BROADCAST;
+        long hash = address * 0x9E3779B97F4A7C15L;
+        int slot = (int)(hash ^ (hash >>> 32)) & (CACHE_SIZE - 1);
+        MacAddress macAddress = cache[slot];
+        if (macAddress == null || macAddress.address != address) {
+            macAddress = new MacAddress(address);
+            cache[slot] = macAddress;
+        }
+        return macAddress;
     }
 
     /**
@@ -23,7 +87,25 @@ public class MacAddress extends Address {
      * @return A broadcast MAC address
      */
     public static MacAddress getBroadcast() {
-        return new MacAddress(BROADCAST_STRING);
+        return BROADCAST_ADDRESS;
+    }
+
+    /**
+     * Returns an instance of the all zero address
+     *
+     * @return The 00:00:00:00:00:00 MAC address
+     */
+    public static MacAddress getZero() {
+        return ZERO_ADDRESS;
+    }
+
+    /**
+     * Returns the packed representation of the address
+     *
+     * @return The address packed in the low 48 bits of a long
+     */
+    public long toLong() {
+        return this.address;
     }
 
     /**
@@ -31,19 +113,20 @@ public class MacAddress extends Address {
      */
     @Override
     public boolean isBroadcast() {
-        if (this.address.equals(BROADCAST_STRING)) {
-            return true;
-        }
-        return false;
+        return this.address == BROADCAST;
     }
 
     /**
      * {@inheritDoc}
+     * The 6 bytes of the address, first octet first
      */
     @Override
     public byte[] getBytes() {
-        // Simulation purposes, simply convert
-        return this.address.getBytes();
+        byte[] bytes = new byte[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            bytes[i] = (byte)(this.address >>> (8 * (LENGTH - 1 - i)));
+        }
+        return bytes;
     }
 
     /**
@@ -51,8 +134,7 @@ public class MacAddress extends Address {
      */
     @Override
     public String toString() {
-        return String.format("Mac Address: %s",
-                             this.address);
+        return "Mac Address: " + format(this.address);
     }
 
     /**
@@ -63,6 +145,78 @@ public class MacAddress extends Address {
      * @return
      */
     public boolean matches(MacAddress macAddress) {
-        return this.address.equals(macAddress.address);
+        return this.address == macAddress.address;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof MacAddress)) {
+            return false;
+        }
+        return this.matches((MacAddress)object);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.address);
+    }
+
+    /**
+     * Packs an address given as colon separated hex octets
+     *
+     * @param address The address, e.g. "11:22:33:44:55:66"
+     *
+     * @return The packed address
+     *
+     * @throws IllegalArgumentException If the address is malformed
+     */
+    public static long parse(String address) {
+        String[] parts = address.split(":", -1);
+        if (parts.length != LENGTH) {
+            throw new IllegalArgumentException("Invalid Mac address: " +
+                                               address);
+        }
+        long packed = 0;
+        for (String part : parts) {
+            int value;
+            try {
+                value = Integer.parseInt(part, 16);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid Mac address: " +
+                                                   address);
+            }
+            if (part.length() > 2 || value < 0) {
+                throw new IllegalArgumentException("Invalid Mac address: " +
+                                                   address);
+            }
+            packed = (packed << 8) | value;
+        }
+        return packed;
+    }
+
+    /**
+     * Formats a packed address as colon separated hex octets
+     *
+     * @param address The packed address
+     *
+     * @return The address, e.g. "11:22:33:44:55:66"
+     */
+    public static String format(long address) {
+        char[] chars = new char[3 * LENGTH - 1];
+        for (int i = 0; i < LENGTH; i++) {
+            int octet = (int)(address >>> (8 * (LENGTH - 1 - i))) & 0xFF;
+            if (i > 0) {
+                chars[3 * i - 1] = ':';
+            }
+            chars[3 * i] = HEX_DIGITS[octet >>> 4];
+            chars[3 * i + 1] = HEX_DIGITS[octet & 0xF];
+        }
+        return new String(chars);
     }
 }
@@ -2,6 +2,7 @@ package com.secarp.common;
 
 /**
  * This implements a circular queue using a fixed size array
+ * It is not thread safe, callers need to synchronize access themselves
  */
 public class CircularQueue<T> {
     // The internal array
@@ -10,19 +11,23 @@ public class CircularQueue<T> {
     // The capacity of the queue
     private int capacity;
 
-    // The head and tail pointers
-    private int head, tail;
+    // The index of the first element
+    private int head;
+
+    // The number of elements in the queue
+    private int size;
 
     /**
      * Constructor function
      *
      * @param capacity The maximum capacity of the queue
      */
+    @SuppressWarnings("unchecked")
     public CircularQueue(int capacity) {
         this.queue = (T[])new Object[capacity];
         this.capacity = capacity;
-        this.head = -1;
-        this.tail = -1;
+        this.head = 0;
+        this.size = 0;
     }
 
     /**
@@ -31,27 +36,40 @@ public class CircularQueue<T> {
      * @return The number of elements in the queue
      */
     public int length() {
-        if (this.head == -1) {
-            return 0;
-        }
-        if (this.head <= this.tail) {
-            return this.tail - this.head + 1;
-        }
-        return this.capacity - (this.head - this.tail - 1);
+        return this.size;
+    }
+
+    /**
+     * Checks whether the queue is empty
+     *
+     * @return Whether the queue has no elements
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Checks whether the queue is full
+     *
+     * @return Whether the queue has reached its capacity
+     */
+    public boolean isFull() {
+        return this.size == this.capacity;
     }
 
     /**
      * Add element to the queue
      *
      * @param el The item to be added
+     *
+     * @throws IllegalStateException If the queue is full
      */
     public void enqueue(T el) {
-        if (this.head == -1) {
-            this.head = this.tail = 0;
-        } else {
-            this.tail = (this.tail + 1) % this.capacity;
+        if (this.isFull()) {
+            throw new IllegalStateException("Queue is full");
         }
-        this.queue[this.tail] = el;
+        this.queue[(this.head + this.size) % this.capacity] = el;
+        this.size++;
     }
 
     /**
@@ -61,11 +79,13 @@ public class CircularQueue<T> {
      * @return T The first item
      */
     public T dequeue() {
-        if (this.head == -1) {
+        if (this.isEmpty()) {
             return null;
         }
         T first = this.queue[this.head];
+        this.queue[this.head] = null;
         this.head = (this.head + 1) % this.capacity;
+        this.size--;
         return first;
     }
 
@@ -75,7 +95,7 @@ public class CircularQueue<T> {
      * @return T The first item
      */
     public T top() {
-        if (this.head == -1) {
+        if (this.isEmpty()) {
             return null;
         }
         return this.queue[this.head];
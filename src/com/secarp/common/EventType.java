@@ -0,0 +1,20 @@
+package com.secarp.common;
+
+/**
+ * Data type for enumerating the kinds of events that are logged or traced
+ */
+public enum EventType {
+    PACKET_SENT,
+    PACKET_RECEIVED,
+    ARP_CACHE,
+    CONFLICT_CHECK;
+
+    /**
+     * Returns the bit of the event type in a mask of event types
+     *
+     * @return The bit
+     */
+    public int mask() {
+        return 1 << this.ordinal();
+    }
+}
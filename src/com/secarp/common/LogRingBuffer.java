@@ -0,0 +1,174 @@
+package com.secarp.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring of fixed-size binary records, allocated once
+ * Any number of threads claim a slot, fill it in and publish it. One
+ * background thread hands the published records to a handler in the order
+ * they were claimed. Producers wait while the ring is full.
+ */
+class LogRingBuffer {
+    // Time, in nanoseconds, to wait before checking the ring again
+    private static final long PARK_NANOS = 100000;
+
+    /**
+     * Handles the records on the background thread
+     */
+    interface Handler {
+        /**
+         * Handles a record
+         *
+         * @param records The buffer holding all the records
+         * @param offset The offset of the record in the buffer
+         * @param attachment The object published along with the record
+         */
+        void handle(ByteBuffer records, int offset, Object attachment);
+
+        /**
+         * Called when all the published records have been handled
+         */
+        void idle();
+    }
+
+    // The number of records in the ring, a power of 2
+    private final int capacity;
+
+    // The size of a record in bytes
+    private final int recordSize;
+
+    // The records
+    private final ByteBuffer records;
+
+    // The objects published along with the records
+    private final Object[] attachments;
+
+    // For each slot, one more than the sequence of the record published in it
+    private final AtomicLongArray published;
+
+    // The sequence of the next record to be claimed
+    private final AtomicLong claimed;
+
+    // The sequence of the next record to be handled
+    private volatile long consumed;
+
+    // The sequence up to which the records have been handled and the handler
+    // has gone idle
+    private volatile long flushed;
+
+    // The handler of the records
+    private final Handler handler;
+
+    /**
+     * Constructor function
+     * Starts the background thread
+     *
+     * @param capacity The minimum number of records in the ring
+     * @param recordSize The size of a record in bytes
+     * @param handler The handler of the records
+     */
+    LogRingBuffer(int capacity, int recordSize, Handler handler) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.recordSize = recordSize;
+        this.records = ByteBuffer.allocate(this.capacity * recordSize);
+        this.attachments = new Object[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        this.claimed = new AtomicLong();
+        this.handler = handler;
+
+        Thread thread = new Thread(this::consume, "secarp-logger");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Getter for records
+     */
+    ByteBuffer getRecords() {
+        return this.records;
+    }
+
+    /**
+     * Claims the next record, waiting while the ring is full
+     *
+     * @return The sequence of the record
+     */
+    long claim() {
+        long sequence = this.claimed.getAndIncrement();
+        while (sequence - this.consumed >= this.capacity) {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the offset of a record in the buffer
+     *
+     * @param sequence The sequence of the record
+     * @return The offset
+     */
+    int offset(long sequence) {
+        return this.slot(sequence) * this.recordSize;
+    }
+
+    /**
+     * Publishes a claimed record once it has been filled in
+     *
+     * @param sequence The sequence of the record
+     * @param attachment An object to hand to the handler along with the
+     * record, may be null
+     */
+    void publish(long sequence, Object attachment) {
+        int slot = this.slot(sequence);
+        this.attachments[slot] = attachment;
+        this.published.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Waits till all the records claimed so far have been handled
+     */
+    void drain() {
+        long target = this.claimed.get();
+        while (this.flushed < target) {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Returns the slot of a record
+     */
+    private int slot(long sequence) {
+        return (int)(sequence & (this.capacity - 1));
+    }
+
+    /**
+     * Hands the records to the handler as they get published
+     */
+    private void consume() {
+        long sequence = 0;
+        while (true) {
+            int slot = this.slot(sequence);
+            if (this.published.get(slot) != sequence + 1) {
+                if (this.flushed != sequence) {
+                    this.handler.idle();
+                    this.flushed = sequence;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+                continue;
+            }
+            try {
+                this.handler.handle(this.records,
+                                    slot * this.recordSize,
+                                    this.attachments[slot]);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            this.attachments[slot] = null;
+            sequence++;
+            this.consumed = sequence;
+        }
+    }
+}
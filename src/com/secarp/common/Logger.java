@@ -1,6 +1,14 @@
 package com.secarp.common;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
@@ -21,44 +29,192 @@ import com.secarp.protocol.secarp.SecArpHeader;
  * Logs the following things:
  * 1. Changes in ARP cache of a node
  * 2. Packets sent and received by a node
+ * 3. Conflict checks of SecArp
+ *
+ * Events are appended as fixed-size binary records to a ring buffer shared
+ * by all the nodes, and formatted and written by a background thread.
+ * Each event type can be turned off per node, after which logging it costs
+ * a single check.
+ *
+ * A change of an ARP cache is logged as the entry put, and the background
+ * thread keeps its own copy of the caches of every logger to print, till
+ * the logger is closed. Changes made while the ARP_CACHE event type is off
+ * are missing from the copy.
  */
 public class Logger {
+    // The system property listing the event types logged by default, "all"
+    // or "none" or a comma separated list of event types
+    public static final String LOG_PROPERTY = "secarp.log";
+
+    // The system property setting the number of records in the ring buffer
+    public static final String LOG_CAPACITY_PROPERTY = "secarp.log.capacity";
+
+    // The default number of records in the ring buffer
+    private static final int DEFAULT_LOG_CAPACITY = 8192;
+
+    // Layout of a record
+    private static final int EVENT_TYPE_OFFSET = 0;
+    private static final int KIND_OFFSET = 1;
+    private static final int ARP_TYPE_OFFSET = 2;
+    private static final int FLOOD_FLAG_OFFSET = 3;
+    private static final int NODE_OFFSET = 4;
+    private static final int SEQUENCE_NUMBER_OFFSET = 8;
+    private static final int SENDER_IP_OFFSET = 12;
+    private static final int SENDER_MAC_OFFSET = 16;
+    private static final int RECEIVER_MAC_OFFSET = 24;
+    private static final int RECEIVER_IP_OFFSET = 32;
+    private static final int RECORD_SIZE = 40;
+
+    // Layout of an ARP cache record, the kind byte is the number of caches
+    private static final int CACHE_TIME_OFFSET = 8;
+    private static final int CACHE_IP_OFFSET = 12;
+    private static final int CACHE_MAC_OFFSET = 16;
+    private static final int FIRST_TIMEOUT_OFFSET = 24;
+    private static final int SECOND_TIMEOUT_OFFSET = 28;
+    private static final int LOGGER_OFFSET = 32;
+
+    // The event type byte of a record closing a logger, not an event type
+    private static final byte CLOSE = -1;
+
+    // The event types by ordinal
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    // The id of the next logger
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    // Values of the kind byte of a packet record
+    private static final byte NO_HEADER = 0;
+    private static final byte ARP_HEADER = 1;
+    private static final byte SEC_ARP_HEADER = 2;
+
+    // The event types logged by default
+    private static final int DEFAULT_MASK =
+        parseMask(System.getProperty(LOG_PROPERTY, "all"));
+
+    // The ring buffer shared by all the loggers
+    private static final LogRingBuffer RING = new LogRingBuffer(
+        Integer.getInteger(LOG_CAPACITY_PROPERTY, DEFAULT_LOG_CAPACITY),
+        RECORD_SIZE,
+        new Writer());
+
+    static {
+        // Writing out whatever is still in the ring before exiting
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::flush));
+    }
+
     // The node
     private Node node;
 
+    // The event types logged for the node
+    private volatile int mask;
+
+    // Identifies the logger across all the networks of the process, unlike
+    // the id of its node
+    private final int id;
+
+    // Whether the background thread may hold a copy of the caches
+    private volatile boolean cacheLogged;
+
     /**
      * Constructor function
      */
     public Logger(Node node) {
         this.node = node;
+        this.mask = DEFAULT_MASK;
+        this.id = NEXT_ID.getAndIncrement();
+        this.cacheLogged = false;
+    }
+
+    /**
+     * Checks whether an event type is logged for the node
+     *
+     * @param eventType The event type
+     * @return Whether it is logged
+     */
+    public boolean isEnabled(EventType eventType) {
+        return (this.mask & eventType.mask()) != 0;
+    }
+
+    /**
+     * Turns logging of an event type on or off for the node
+     *
+     * @param eventType The event type
+     * @param enabled Whether it should be logged
+     */
+    public synchronized void setEnabled(EventType eventType, boolean enabled) {
+        if (enabled) {
+            this.mask |= eventType.mask();
+        } else {
+            this.mask &= ~eventType.mask();
+        }
+    }
+
+    /**
+     * Lets the background thread drop what it keeps for the logger, once the
+     * simulation of the node has finished
+     */
+    public void close() {
+        if (!this.cacheLogged) {
+            return;
+        }
+        this.cacheLogged = false;
+        long sequence = RING.claim();
+        ByteBuffer records = RING.getRecords();
+        int offset = RING.offset(sequence);
+        records.put(offset + EVENT_TYPE_OFFSET, CLOSE);
+        records.putInt(offset + LOGGER_OFFSET, this.id);
+        RING.publish(sequence, null);
+    }
+
+    /**
+     * Waits till everything logged so far has been written
+     */
+    public static void flush() {
+        RING.drain();
     }
 
     /**
-     * Logs the ARP cache
+     * Logs an entry put in the ARP cache, in both caches for SecArp
+     *
+     * @param ipv4Address The ipv4 address of the entry
+     * @param macAddress The Mac address of the entry
      */
-    public synchronized void logArpCache() {
+    public void logArpCache(Ipv4Address ipv4Address, MacAddress macAddress) {
+        if (!this.isEnabled(EventType.ARP_CACHE)) {
+            return;
+        }
         AddressResolutionProtocol arp = this.node.getArp();
+        ArpCache first;
+        ArpCache second;
         if(arp instanceof Arp) {
             // Original Arp Protocol
-            printArpCache(((Arp) arp).getArpCache(), "Arp");
+            first = ((Arp) arp).getArpCache();
+            second = null;
         } else if (arp instanceof SecArp) {
             //SecArp Protocol
-            printArpCache(((SecArp) arp).getL1Cache(), "L1");
-            printArpCache(((SecArp) arp).getL2Cache(), "L2");
+            first = ((SecArp) arp).getL1Cache();
+            second = ((SecArp) arp).getL2Cache();
+        } else {
+            return;
         }
-    }
-
-    /**
-     * Prints the ARP cache
-     */
-    private void printArpCache(ArpCache cache, String cacheName) {
-        Map<Ipv4Address, MacAddress> map = cache.getMap();
-        System.out.println(cacheName + " Cache for node: " + this.node.getId());
-        for(Ipv4Address ip : map.keySet()) {
-            MacAddress mac = map.get(ip);
-            System.out.println(ip + "\t" + mac);
-        }
-        System.out.println();
+        if (!this.cacheLogged) {
+            this.cacheLogged = true;
+        }
+        long sequence = RING.claim();
+        ByteBuffer records = RING.getRecords();
+        int offset = RING.offset(sequence);
+        records.put(offset + EVENT_TYPE_OFFSET,
+                    (byte)EventType.ARP_CACHE.ordinal());
+        records.put(offset + KIND_OFFSET, (byte)(second == null ? 1 : 2));
+        records.putInt(offset + NODE_OFFSET, this.node.getId());
+        records.putInt(offset + CACHE_TIME_OFFSET, Timer.getCurrentTime());
+        records.putInt(offset + CACHE_IP_OFFSET, ipv4Address.toInt());
+        records.putLong(offset + CACHE_MAC_OFFSET, macAddress.toLong());
+        records.putInt(offset + FIRST_TIMEOUT_OFFSET, first.getTimeout());
+        records.putInt(offset + SECOND_TIMEOUT_OFFSET,
+                       second == null ? 0 : second.getTimeout());
+        records.putInt(offset + LOGGER_OFFSET, this.id);
+        RING.publish(sequence, null);
     }
 
     /**
@@ -67,46 +223,297 @@ public class Logger {
      * @param packet The packet to be logged
      * @param sent Whether the packet is sent or received
      */
-    public synchronized void logPacket(Packet packet, boolean sent) {
-        System.out.println("Node " + this.node.getId() + " " +
-                           (sent?"sent":"received") + " the following packet:");
+    public void logPacket(Packet packet, boolean sent) {
+        EventType eventType =
+            sent ? EventType.PACKET_SENT : EventType.PACKET_RECEIVED;
+        if (!this.isEnabled(eventType)) {
+            return;
+        }
+        long sequence = RING.claim();
+        ByteBuffer records = RING.getRecords();
+        int offset = RING.offset(sequence);
+        records.put(offset + EVENT_TYPE_OFFSET, (byte)eventType.ordinal());
+        records.putInt(offset + NODE_OFFSET, this.node.getId());
         if (packet.getHeader() instanceof ArpHeader) {
             // Arp packet
             ArpHeader header = (ArpHeader)packet.getHeader();
-
-            System.out.println("ARP Packet");
-            System.out.println("Type: " +
-                               (header.getArpType() == ArpType.REQUEST?
-                                "request":"reply")
-                               );
-            System.out.println("Sender " + header.getSenderMac());
-            System.out.println("Sender " + header.getSenderIp());
-            System.out.println("Receiver " + header.getReceiverMac());
-            System.out.println("Receiver " + header.getReceiverIp());
-            System.out.println();
+            records.put(offset + KIND_OFFSET, ARP_HEADER);
+            putAddresses(records,
+                         offset,
+                         header.getArpType(),
+                         header.getSenderMac(),
+                         header.getSenderIp(),
+                         header.getReceiverMac(),
+                         header.getReceiverIp()
+                         );
         } else if(packet.getHeader() instanceof SecArpHeader) {
-
             SecArpHeader header = (SecArpHeader)packet.getHeader();
+            records.put(offset + KIND_OFFSET, SEC_ARP_HEADER);
+            records.putInt(offset + SEQUENCE_NUMBER_OFFSET,
+                           header.getSequenceNumber());
+            records.put(offset + FLOOD_FLAG_OFFSET,
+                        (byte)(header.isArpFloodFlag() ? 1 : 0));
+            putAddresses(records,
+                         offset,
+                         header.getArpType(),
+                         header.getSenderMac(),
+                         header.getSenderIp(),
+                         header.getReceiverMac(),
+                         header.getReceiverIp()
+                         );
+        } else {
+            records.put(offset + KIND_OFFSET, NO_HEADER);
+        }
+        // The payload is a read-only view, so it is not copied
+        RING.publish(sequence, packet.getPayload());
+    }
+
+    /**
+     * Logs the outcome of a conflict check
+     *
+     * @param conflict Whether more than one MAC replied
+     */
+    public void logConflictCheck(boolean conflict) {
+        if (!this.isEnabled(EventType.CONFLICT_CHECK)) {
+            return;
+        }
+        long sequence = RING.claim();
+        ByteBuffer records = RING.getRecords();
+        int offset = RING.offset(sequence);
+        records.put(offset + EVENT_TYPE_OFFSET,
+                    (byte)EventType.CONFLICT_CHECK.ordinal());
+        records.put(offset + KIND_OFFSET, (byte)(conflict ? 1 : 0));
+        records.putInt(offset + NODE_OFFSET, this.node.getId());
+        RING.publish(sequence, null);
+    }
+
+    /**
+     * Writes the addresses of an ARP header into a record
+     */
+    private static void putAddresses(ByteBuffer records,
+                                     int offset,
+                                     ArpType arpType,
+                                     MacAddress senderMac,
+                                     Ipv4Address senderIp,
+                                     MacAddress receiverMac,
+                                     Ipv4Address receiverIp
+                                     ) {
+        records.put(offset + ARP_TYPE_OFFSET, (byte)arpType.ordinal());
+        records.putLong(offset + SENDER_MAC_OFFSET, senderMac.toLong());
+        records.putInt(offset + SENDER_IP_OFFSET, senderIp.toInt());
+        records.putLong(offset + RECEIVER_MAC_OFFSET, receiverMac.toLong());
+        records.putInt(offset + RECEIVER_IP_OFFSET, receiverIp.toInt());
+    }
+
+    /**
+     * Parses a list of event types
+     *
+     * @param eventTypes "all" or "none" or a comma separated list of event
+     * types
+     * @return The mask of the event types
+     */
+    private static int parseMask(String eventTypes) {
+        if (eventTypes.equals("all")) {
+            return -1;
+        }
+        int mask = 0;
+        if (eventTypes.equals("none")) {
+            return mask;
+        }
+        for (String eventType : eventTypes.split(",")) {
+            mask |= EventType.valueOf(eventType.trim().toUpperCase()).mask();
+        }
+        return mask;
+    }
+
+    /**
+     * Formats the records and writes them to the console
+     */
+    private static class Writer implements LogRingBuffer.Handler {
+        // The console, flushed whenever the ring runs empty
+        private PrintStream out = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out),
+                                     1 << 16),
+            false);
+
+        // The text of the record being formatted
+        private StringBuilder text = new StringBuilder();
+
+        // The copies of the ARP caches by logger id, built from the records
+        private Map<Integer, CacheCopy[]> caches =
+            new HashMap<Integer, CacheCopy[]>();
+
+        @Override
+        public void handle(ByteBuffer records, int offset, Object attachment) {
+            byte type = records.get(offset + EVENT_TYPE_OFFSET);
+            if (type == CLOSE) {
+                this.caches.remove(records.getInt(offset + LOGGER_OFFSET));
+                return;
+            }
+            EventType eventType = EVENT_TYPES[type];
+            int id = records.getInt(offset + NODE_OFFSET);
+            switch (eventType) {
+            case PACKET_SENT:
+            case PACKET_RECEIVED:
+                this.formatPacket(records,
+                                  offset,
+                                  id,
+                                  eventType == EventType.PACKET_SENT,
+                                  (ByteBuffer)attachment);
+                break;
+            case ARP_CACHE:
+                this.formatArpCache(records, offset, id);
+                break;
+            case CONFLICT_CHECK:
+                this.text.append(records.get(offset + KIND_OFFSET) != 0
+                                 ? "Clash found\n\n"
+                                 : "No clash found\n\n");
+                break;
+            }
+            this.out.append(this.text);
+            this.text.setLength(0);
+        }
+
+        @Override
+        public void idle() {
+            this.out.flush();
+        }
 
-            System.out.println("ARP Packet");
-            System.out.println("Type: " +
-                    (header.getArpType() == ArpType.REQUEST?
+        /**
+         * Formats a packet record
+         */
+        private void formatPacket(ByteBuffer records,
+                                  int offset,
+                                  int id,
+                                  boolean sent,
+                                  ByteBuffer payload) {
+            StringBuilder text = this.text;
+            text.append("Node ").append(id).append(' ')
+                .append(sent?"sent":"received")
+                .append(" the following packet:\n");
+            byte kind = records.get(offset + KIND_OFFSET);
+            if (kind != NO_HEADER) {
+                text.append("ARP Packet\n");
+                text.append("Type: ")
+                    .append(records.get(offset + ARP_TYPE_OFFSET) ==
+                            ArpType.REQUEST.ordinal()?
                             "request":"reply")
-            );
-            System.out.println("Sequence No: " + header.getSequenceNumber());
-            System.out.println("Flood flag: " + header.isArpFloodFlag());
-            System.out.println("Sender " + header.getSenderMac());
-            System.out.println("Sender " + header.getSenderIp());
-            System.out.println("Receiver " + header.getReceiverMac());
-            System.out.println("Receiver " + header.getReceiverIp());
-            System.out.println();
-        }
-
-        byte[] payload = packet.getPayload();
-        if (payload != null) {
-            System.out.println("Payload:");
-            System.out.println(new String(payload));
-            System.out.println();
+                    .append('\n');
+                if (kind == SEC_ARP_HEADER) {
+                    text.append("Sequence No: ")
+                        .append(records.getInt(offset + SEQUENCE_NUMBER_OFFSET))
+                        .append('\n');
+                    text.append("Flood flag: ")
+                        .append(records.get(offset + FLOOD_FLAG_OFFSET) != 0)
+                        .append('\n');
+                }
+                text.append("Sender Mac Address: ")
+                    .append(MacAddress.format(
+                                records.getLong(offset + SENDER_MAC_OFFSET)))
+                    .append('\n');
+                text.append("Sender Ipv4 Address: ")
+                    .append(Ipv4Address.format(
+                                records.getInt(offset + SENDER_IP_OFFSET)))
+                    .append('\n');
+                text.append("Receiver Mac Address: ")
+                    .append(MacAddress.format(
+                                records.getLong(offset + RECEIVER_MAC_OFFSET)))
+                    .append('\n');
+                text.append("Receiver Ipv4 Address: ")
+                    .append(Ipv4Address.format(
+                                records.getInt(offset + RECEIVER_IP_OFFSET)))
+                    .append("\n\n");
+            }
+            if (payload != null) {
+                text.append("Payload:\n");
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                text.append(new String(bytes));
+                text.append("\n\n");
+            }
+        }
+
+        /**
+         * Applies an ARP cache record to the copies of the caches of the
+         * node and formats them
+         */
+        private void formatArpCache(ByteBuffer records, int offset, int id) {
+            int count = records.get(offset + KIND_OFFSET);
+            int logger = records.getInt(offset + LOGGER_OFFSET);
+            CacheCopy[] copies = this.caches.get(logger);
+            if (copies == null || copies.length != count) {
+                copies = new CacheCopy[count];
+                for (int i = 0; i < count; i++) {
+                    copies[i] = new CacheCopy();
+                }
+                this.caches.put(logger, copies);
+            }
+            int time = records.getInt(offset + CACHE_TIME_OFFSET);
+            Ipv4Address ipv4Address =
+                Ipv4Address.valueOf(records.getInt(offset + CACHE_IP_OFFSET));
+            MacAddress macAddress =
+                MacAddress.valueOf(records.getLong(offset + CACHE_MAC_OFFSET));
+            copies[0].put(ipv4Address,
+                          macAddress,
+                          time + records.getInt(offset + FIRST_TIMEOUT_OFFSET));
+            if (count == 1) {
+                this.formatCopy(copies[0], "Arp", id, time);
+            } else {
+                copies[1].put(ipv4Address,
+                              macAddress,
+                              time +
+                              records.getInt(offset + SECOND_TIMEOUT_OFFSET));
+                this.formatCopy(copies[0], "L1", id, time);
+                this.formatCopy(copies[1], "L2", id, time);
+            }
+        }
+
+        /**
+         * Formats the valid entries of a copy of an ARP cache, dropping the
+         * expired ones
+         */
+        private void formatCopy(CacheCopy copy,
+                                String cacheName,
+                                int id,
+                                int time) {
+            this.text.append(cacheName).append(" Cache for node: ").append(id)
+                .append('\n');
+            Iterator<Map.Entry<Ipv4Address, MacAddress>> entries =
+                copy.macAddresses.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Ipv4Address, MacAddress> entry = entries.next();
+                if (copy.expirationTimes.get(entry.getKey()) < time) {
+                    copy.expirationTimes.remove(entry.getKey());
+                    entries.remove();
+                    continue;
+                }
+                this.text.append(entry.getKey()).append('\t')
+                    .append(entry.getValue()).append('\n');
+            }
+            this.text.append('\n');
+        }
+    }
+
+    /**
+     * The entries of an ARP cache as seen by the background thread
+     */
+    private static class CacheCopy {
+        // The Mac address of each IP
+        private Map<Ipv4Address, MacAddress> macAddresses =
+            new HashMap<Ipv4Address, MacAddress>();
+
+        // The time each entry expires after
+        private Map<Ipv4Address, Integer> expirationTimes =
+            new HashMap<Ipv4Address, Integer>();
+
+        /**
+         * Puts an entry, replacing the one of the same IP
+         */
+        private void put(Ipv4Address ipv4Address,
+                         MacAddress macAddress,
+                         int expirationTime) {
+            this.macAddresses.put(ipv4Address, macAddress);
+            this.expirationTimes.put(ipv4Address, expirationTime);
         }
     }
 }
@@ -0,0 +1,68 @@
+package com.secarp.common;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * A pool of reusable objects of one kind
+ * Every thread keeps free objects of its own, so taking and returning them
+ * needs no synchronization. An object may be returned on another thread
+ * than the one that took it. At most a fixed number of free objects is kept
+ * per thread, the others are left to the garbage collector.
+ */
+public class ObjectPool<T> {
+    // The default number of free objects kept per thread
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Creates new objects when none is free
+    private final Supplier<T> factory;
+
+    // The number of free objects kept per thread
+    private final int capacity;
+
+    // The free objects of each thread
+    private final ThreadLocal<ArrayDeque<T>> free;
+
+    /**
+     * Constructor function
+     *
+     * @param factory Creates new objects when none is free
+     */
+    public ObjectPool(Supplier<T> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor function
+     *
+     * @param factory Creates new objects when none is free
+     * @param capacity The number of free objects kept per thread
+     */
+    public ObjectPool(Supplier<T> factory, int capacity) {
+        this.factory = factory;
+        this.capacity = capacity;
+        this.free = ThreadLocal.withInitial(() -> new ArrayDeque<T>());
+    }
+
+    /**
+     * Takes a free object, or creates one if there is none
+     *
+     * @return The object
+     */
+    public T acquire() {
+        T object = this.free.get().pollFirst();
+        return object == null ? this.factory.get() : object;
+    }
+
+    /**
+     * Returns an object nobody uses anymore
+     *
+     * @param object The object
+     */
+    public void release(T object) {
+        ArrayDeque<T> free = this.free.get();
+        if (free.size() < this.capacity) {
+            free.addFirst(object);
+        }
+    }
+}
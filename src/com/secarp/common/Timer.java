@@ -1,9 +1,39 @@
 package com.secarp.common;
 
+import com.secarp.scheduler.Scheduler;
+
 /**
  * Utility class for managing time related operations
+ * By default the wall clock is used. A thread running a simulation can bind
+ * its scheduler, after which the scheduler's clock is used on that thread.
  */
 public class Timer {
+    // The scheduler bound to the current thread, if any
+    private static final ThreadLocal<Scheduler> scheduler =
+        new ThreadLocal<Scheduler>();
+
+    /**
+     * Binds a scheduler to the current thread
+     *
+     * @param scheduler The scheduler whose clock is to be used, null to fall
+     * back to the wall clock
+     */
+    public static void setScheduler(Scheduler scheduler) {
+        if (scheduler == null) {
+            Timer.scheduler.remove();
+        } else {
+            Timer.scheduler.set(scheduler);
+        }
+    }
+
+    /**
+     * Returns the scheduler bound to the current thread
+     *
+     * @return The bound scheduler, null if the wall clock is used
+     */
+    public static Scheduler getScheduler() {
+        return Timer.scheduler.get();
+    }
 
     /**
      * Returns the current time in seconds
@@ -11,7 +41,7 @@ public class Timer {
      * @return The current unix timestamp in seconds
      */
     public static int getCurrentTime() {
-        return (int)(System.currentTimeMillis()/1000);
+        return (int)(currentTimeMillis()/1000);
     }
 
     /**
@@ -20,19 +50,39 @@ public class Timer {
      * @return The current unix timestamp in milliseconds
      */
     public static int getCurrentTimeInMillis() {
-        return (int)(System.currentTimeMillis());
+        return (int)(currentTimeMillis());
     }
 
     /**
      * Sleeps for a particular amount of time
+     * Not allowed while a non blocking scheduler is bound, since that would
+     * stall the whole simulation
      *
      * @param millis The number of milliseconds to sleep for
      */
     public static void sleep(long millis) {
+        Scheduler scheduler = Timer.scheduler.get();
+        if (scheduler != null && !scheduler.supportsBlocking()) {
+            throw new IllegalStateException(
+                "Cannot sleep while running on a non blocking scheduler");
+        }
         try {
             Thread.sleep(millis);
         } catch(InterruptedException e) {
             // You're doomed!
         }
     }
+
+    /**
+     * Returns the current time of the bound scheduler or the wall clock
+     *
+     * @return The current time in milliseconds
+     */
+    private static long currentTimeMillis() {
+        Scheduler scheduler = Timer.scheduler.get();
+        if (scheduler == null) {
+            return System.currentTimeMillis();
+        }
+        return scheduler.getCurrentTimeInMillis();
+    }
 }
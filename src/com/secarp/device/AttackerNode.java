@@ -2,13 +2,15 @@ package com.secarp.device;
 
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
-import com.secarp.common.Timer;
 import com.secarp.protocol.Packet;
 import com.secarp.protocol.arp.ArpType;
 import com.secarp.protocol.secarp.SecArp;
 import com.secarp.protocol.secarp.SecArpHeader;
 
 public class AttackerNode extends Node {
+    // Duration of an attack in milliseconds
+    private static final int ATTACK_DURATION = 3000;
+
     // The victim ip
     private Ipv4Address victimIp;
     /**
@@ -27,23 +29,20 @@ public class AttackerNode extends Node {
     @Override
     public void handlePacket(Packet packet) {
         super.getLogger().logPacket(packet, false);
+        super.tracePacket(packet, false);
+        super.getMetrics().packetReceived();
         if (!(packet.getHeader() instanceof SecArpHeader)) {
             return;
         }
         SecArpHeader header = (SecArpHeader) packet.getHeader();
         if (header.getArpType() == ArpType.REQUEST &&
                 header.getSenderIp().matches(victimIp)) {
-            // Spawning new thread
-            new Thread(new Runnable() {
-                public void run() {
-                    attack(header);
-                }
-            }).start();
+            attack(header);
         }
     }
 
     /**
-     * Attacks the victim node
+     * Attacks the victim node by flooding it with forged replies
      *
      * @param header The header of incoming arp sec packet
      */
@@ -55,10 +54,9 @@ public class AttackerNode extends Node {
                 header.getSenderIp(),
                 header.getSequenceNumber()
         );
-        int currentTime = Timer.getCurrentTimeInMillis();
-        while (Timer.getCurrentTimeInMillis() <
-                (currentTime + 3000)) {
-            super.sendPacket(replyPacket, header.getSenderMac());
-        }
+        super.floodPacket(replyPacket,
+                          header.getSenderMac(),
+                          ATTACK_DURATION);
+        replyPacket.release();
     }
 }
\ No newline at end of file
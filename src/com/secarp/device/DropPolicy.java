@@ -0,0 +1,10 @@
+package com.secarp.device;
+
+/**
+ * Data type for enumerating which packet is dropped when the queue of
+ * packets waiting for address resolution is full
+ */
+public enum DropPolicy {
+    DROP_OLDEST,
+    DROP_NEWEST;
+}
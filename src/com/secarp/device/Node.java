@@ -1,22 +1,45 @@
 package com.secarp.device;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
+import com.secarp.common.CircularQueue;
 import com.secarp.common.Logger;
-import com.secarp.common.Timer;
+import com.secarp.metrics.NodeMetrics;
 import com.secarp.network.Network;
 import com.secarp.protocol.AddressResolutionProtocol;
 import com.secarp.protocol.Packet;
 import com.secarp.protocol.Receivable;
+import com.secarp.protocol.ip.Ipv4Header;
+import com.secarp.scheduler.Scheduler;
+import com.secarp.trace.TraceRecorder;
 
 /**
  * An abstraction of a particular node
  */
 public class Node {
-    // Transmission delay in milliseconds
-    private final static int TRANSMISSION_DELAY = 200;
+    // The system property setting the number of packets that can wait for
+    // the resolution of a destination
+    public static final String PENDING_QUEUE_DEPTH_PROPERTY =
+        "secarp.pending.depth";
+
+    // The system property setting the drop policy of a full pending queue,
+    // one of "oldest" or "newest"
+    public static final String PENDING_QUEUE_POLICY_PROPERTY =
+        "secarp.pending.policy";
+
+    // Transmission delay in milliseconds, the least time it takes a task of
+    // one node to affect another
+    public final static int TRANSMISSION_DELAY = 200;
+
+    // The default number of packets that can wait for the resolution of a
+    // destination, the same as unres_qlen in Linux
+    private static final int DEFAULT_PENDING_QUEUE_DEPTH = 3;
 
     // The id of the node
     private int id;
@@ -30,6 +53,16 @@ public class Node {
     // The underlying network
     private Network network;
 
+    // The broadcast domain of the node
+    private int vlan;
+
+    // The router taking packets to IPs outside the subnet of the node, null
+    // if all IPs are on the link
+    private Ipv4Address gateway;
+
+    // The length of the prefix of the subnet of the node
+    private int prefixLength;
+
     // The registered receivable instances that handle incoming packets
     private ArrayList<Receivable> receivables;
 
@@ -39,14 +72,45 @@ public class Node {
     // Logger
     private Logger logger;
 
+    // Counts of the packets sent and received
+    private NodeMetrics metrics;
+
+    // The time, in milliseconds, at which the link is free to transmit again
+    private long linkFreeTime;
+
+    // Packets waiting for the resolution of their destination, by the
+    // destination IP
+    private Map<Ipv4Address, CircularQueue<Packet>> pendingPackets;
+
+    // The number of packets that can wait for the resolution of a destination
+    private int pendingQueueDepth;
+
+    // Which packet is dropped when a pending queue is full
+    private DropPolicy dropPolicy;
+
+    // The number of packets dropped while waiting for resolution, or because
+    // resolution failed
+    private AtomicLong droppedPackets;
+
     /**
      * Constructor function
      */
     public Node(Ipv4Address ipv4Address, MacAddress macAddress) {
         this.ipv4Address = ipv4Address;
         this.macAddress = macAddress;
+        this.vlan = Network.DEFAULT_VLAN;
         this.receivables = new ArrayList<Receivable>();
         this.logger = new Logger(this);
+        this.metrics = new NodeMetrics();
+        this.pendingPackets = new HashMap<Ipv4Address, CircularQueue<Packet>>();
+        this.setPendingQueueDepth(
+            Integer.getInteger(PENDING_QUEUE_DEPTH_PROPERTY,
+                               DEFAULT_PENDING_QUEUE_DEPTH));
+        this.dropPolicy = System.getProperty(PENDING_QUEUE_POLICY_PROPERTY,
+                                             "oldest").equals("newest")
+            ? DropPolicy.DROP_NEWEST
+            : DropPolicy.DROP_OLDEST;
+        this.droppedPackets = new AtomicLong();
     }
 
     /**
@@ -72,6 +136,82 @@ public class Node {
         return this.macAddress;
     }
 
+    public int getPendingQueueDepth() {
+        return this.pendingQueueDepth;
+    }
+
+    public void setPendingQueueDepth(int pendingQueueDepth) {
+        if (pendingQueueDepth < 1) {
+            throw new IllegalArgumentException(
+                "Pending queue depth must be at least 1");
+        }
+        this.pendingQueueDepth = pendingQueueDepth;
+    }
+
+    public DropPolicy getDropPolicy() {
+        return this.dropPolicy;
+    }
+
+    public void setDropPolicy(DropPolicy dropPolicy) {
+        this.dropPolicy = dropPolicy;
+    }
+
+    /**
+     * Returns the number of packets dropped while waiting for resolution, or
+     * because resolution failed
+     *
+     * @return The number of dropped packets
+     */
+    public long getDroppedPackets() {
+        return this.droppedPackets.get();
+    }
+
+    public int getVlan() {
+        return this.vlan;
+    }
+
+    public void setVlan(int vlan) {
+        int oldVlan = this.vlan;
+        this.vlan = vlan;
+        if (this.network != null) {
+            this.network.updateVlan(this, oldVlan, vlan);
+        }
+    }
+
+    public Ipv4Address getGateway() {
+        return this.gateway;
+    }
+
+    public int getPrefixLength() {
+        return this.prefixLength;
+    }
+
+    /**
+     * Sets the router for IPs outside the subnet of the node
+     *
+     * @param gateway The IP of the router, null if all IPs are on the link
+     * @param prefixLength The length of the prefix of the subnet
+     */
+    public void setGateway(Ipv4Address gateway, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 32) {
+            throw new IllegalArgumentException(
+                "Prefix length must be between 0 and 32");
+        }
+        this.gateway = gateway;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * Checks whether an IP can be reached without going through the gateway
+     *
+     * @param ipv4Address The IP
+     * @return Whether the IP is in the subnet of the node
+     */
+    public boolean isOnLink(Ipv4Address ipv4Address) {
+        return this.gateway == null ||
+            this.ipv4Address.matches(ipv4Address, this.prefixLength);
+    }
+
     public void setNetwork(Network network) {
         this.network = network;
     }
@@ -80,8 +220,16 @@ public class Node {
         return this.network;
     }
 
+    public Scheduler getScheduler() {
+        return this.network.getScheduler();
+    }
+
     public void setMacAddress(MacAddress macAddress) {
+        MacAddress oldAddress = this.macAddress;
         this.macAddress = macAddress;
+        if (this.network != null) {
+            this.network.updateMacAddress(this, oldAddress, macAddress);
+        }
     }
 
     public ArrayList<Receivable> getReceivables() {
@@ -117,31 +265,46 @@ public class Node {
         this.receivables.add(receivable);
     }
 
+    /**
+     * Called by the network when a packet is put on the link towards this
+     * node. The packet is handled once the transmission delay has passed,
+     * and retained till then.
+     *
+     * @param packet The packet on the link
+     */
+    public void receivePacket(Packet packet) {
+        this.getScheduler().schedule(this,
+                                     TRANSMISSION_DELAY,
+                                     PacketTask.obtain(PacketTask.Kind.DELIVER,
+                                                       this,
+                                                       packet,
+                                                       null,
+                                                       0)
+                                     );
+    }
+
     /**
      * Handles a packet receive operation
-     * Iteratively calls all the receivables in a separate thread
+     * Iteratively calls all the receivables
      *
      * @param packet The received packet
      */
     public void handlePacket(Packet packet) {
         // Logging
         this.logger.logPacket(packet, false);
+        this.tracePacket(packet, false);
+        this.metrics.packetReceived();
 
         for (Receivable receivable : this.receivables) {
-            // Spawning a new thread
-            // The good old Java way :)
-            new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        receivable.handlePacket(packet);
-                    }
-                }).start();
+            receivable.handlePacket(packet);
         }
     }
 
     /**
      * A wrapper over network's send packet
-     * Spawns a new thread
+     * Transmissions of a node are serialized, each one occupies the link for
+     * the transmission delay. Returns without waiting for the transmission;
+     * the packet is retained till it is on the link.
      *
      * @param packet The packet to send
      * @param address The MAC address of the target node/nodes
@@ -150,28 +313,186 @@ public class Node {
                            MacAddress address) {
         // Logging
         this.logger.logPacket(packet, true);
-        Timer.sleep(TRANSMISSION_DELAY);
-        new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    network.sendPacket(id,
-                                       packet,
-                                       address);
-                }
-            }).start();
+        this.tracePacket(packet, true);
+        this.metrics.packetSent(address.isBroadcast());
+
+        Scheduler scheduler = this.getScheduler();
+        long delay;
+        synchronized (this) {
+            long currentTime = scheduler.getCurrentTimeInMillis();
+            long startTime = Math.max(currentTime, this.linkFreeTime);
+            this.linkFreeTime = startTime + TRANSMISSION_DELAY;
+            delay = startTime - currentTime;
+        }
+        scheduler.schedule(this,
+                           delay,
+                           PacketTask.obtain(PacketTask.Kind.TRANSMIT,
+                                             this,
+                                             packet,
+                                             address,
+                                             0)
+                           );
+    }
+
+    /**
+     * Getter for metrics
+     */
+    public NodeMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the current metrics of the node and of its address resolution
+     * protocol
+     *
+     * @return The values by name
+     */
+    public Map<String, Long> getMetricsSnapshot() {
+        Map<String, Long> snapshot = this.metrics.snapshot();
+        if (this.arp != null) {
+            snapshot.putAll(this.arp.getMetrics().snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the trace of the network
+     *
+     * @return The trace recorder, null if the network is not traced
+     */
+    public TraceRecorder getTraceRecorder() {
+        return this.network.getTraceRecorder();
+    }
+
+    /**
+     * Records a packet in the trace of the network, if it is traced
+     *
+     * @param packet The packet
+     * @param sent Whether the packet is sent or received
+     */
+    protected void tracePacket(Packet packet, boolean sent) {
+        TraceRecorder traceRecorder = this.network.getTraceRecorder();
+        if (traceRecorder != null) {
+            traceRecorder.recordPacket(
+                this.getScheduler().getCurrentTimeInMillis(),
+                this.id,
+                sent,
+                packet);
+        }
     }
 
     /**
      * Sends a packet to the underlying network by IP address
+     * The packet goes out at once if the MAC address is known and no packet
+     * waits before it. Otherwise it waits in the queue of its destination
+     * till the MAC address has been resolved, and is dropped if resolution
+     * fails or the queue overflows. Returns without waiting for the
+     * resolution.
+     * A packet to an IP outside the subnet goes to the gateway instead, with
+     * an IPv4 header carrying its destination.
      *
      * @param packet The packet to be sent
      * @param targetIpv4Address The target Ipv4Address
      */
     public void sendPacket(Packet packet, Ipv4Address targetIpv4Address) {
-        MacAddress targetAddress = arp.getMacAddress(targetIpv4Address);
+        boolean onLink = this.isOnLink(targetIpv4Address);
+        Ipv4Address nextHop = onLink ? targetIpv4Address : this.gateway;
+        if (!onLink && packet.getHeader() == null) {
+            packet = packet.withHeader(new Ipv4Header(this.ipv4Address,
+                                                      targetIpv4Address,
+                                                      Ipv4Header.DEFAULT_TTL));
+        }
+        boolean resolving;
+        synchronized (this.pendingPackets) {
+            resolving = this.pendingPackets.containsKey(nextHop);
+        }
+        CompletableFuture<MacAddress> resolution = null;
+        if (!resolving) {
+            // A cached destination needs no queue
+            resolution = this.arp.getMacAddressAsync(nextHop);
+            if (resolution.isDone() &&
+                !resolution.isCompletedExceptionally()) {
+                MacAddress targetAddress = resolution.join();
+                if (targetAddress != null) {
+                    this.sendPacket(packet, targetAddress);
+                    return;
+                }
+            }
+        }
+        synchronized (this.pendingPackets) {
+            CircularQueue<Packet> queue = this.pendingPackets.get(nextHop);
+            resolving = queue != null;
+            if (!resolving) {
+                queue = new CircularQueue<Packet>(this.pendingQueueDepth);
+                this.pendingPackets.put(nextHop, queue);
+            }
+            if (queue.isFull()) {
+                this.droppedPackets.incrementAndGet();
+                if (this.dropPolicy == DropPolicy.DROP_NEWEST) {
+                    return;
+                }
+                queue.dequeue().release();
+            }
+            queue.enqueue(packet.retain());
+        }
+        if (resolving) {
+            // Released by the resolution in progress
+            return;
+        }
+        if (resolution == null) {
+            // The queue seen before was flushed meanwhile
+            resolution = this.arp.getMacAddressAsync(nextHop);
+        }
+        resolution.whenComplete(
+            (targetAddress, error) -> {
+                this.flushPendingPackets(nextHop, targetAddress);
+            });
+    }
 
-        this.sendPacket(packet,
-                        targetAddress
-                        );
+    /**
+     * Sends all the packets waiting for a destination once its resolution
+     * finishes, or drops them if it failed
+     *
+     * @param targetIpv4Address The target Ipv4Address
+     * @param targetAddress The resolved MAC address, null if resolution failed
+     */
+    private void flushPendingPackets(Ipv4Address targetIpv4Address,
+                                     MacAddress targetAddress) {
+        CircularQueue<Packet> queue;
+        synchronized (this.pendingPackets) {
+            queue = this.pendingPackets.remove(targetIpv4Address);
+        }
+        if (targetAddress == null) {
+            this.droppedPackets.addAndGet(queue.length());
+            while (!queue.isEmpty()) {
+                queue.dequeue().release();
+            }
+            return;
+        }
+        while (!queue.isEmpty()) {
+            Packet packet = queue.dequeue();
+            this.sendPacket(packet, targetAddress);
+            packet.release();
+        }
+    }
+
+    /**
+     * Sends the same packet over and over for a particular duration, once
+     * every transmission delay
+     * The packet is retained till the flood is over
+     *
+     * @param packet The packet to send
+     * @param address The MAC address of the target node/nodes
+     * @param duration The duration of the flood in milliseconds
+     */
+    public void floodPacket(Packet packet,
+                            MacAddress address,
+                            long duration) {
+        long endTime = this.getScheduler().getCurrentTimeInMillis() + duration;
+        PacketTask.obtain(PacketTask.Kind.FLOOD,
+                          this,
+                          packet,
+                          address,
+                          endTime).run();
     }
 }
@@ -0,0 +1,123 @@
+package com.secarp.device;
+
+import com.secarp.address.MacAddress;
+import com.secarp.common.ObjectPool;
+import com.secarp.protocol.Packet;
+import com.secarp.scheduler.DroppableTask;
+import com.secarp.scheduler.Scheduler;
+
+/**
+ * A scheduled step of a node moving a packet: putting it on the link,
+ * handling it once received, or sending it once more during a flood
+ * Tasks are pooled, and each holds a reference to its packet till it is
+ * done, so sending and receiving allocate nothing once the pools are warm.
+ * Only deliveries may be dropped, like packets arriving at a full receive
+ * queue.
+ */
+class PacketTask implements DroppableTask {
+    /**
+     * What the task does with its packet
+     */
+    enum Kind {
+        TRANSMIT,
+        DELIVER,
+        FLOOD
+    }
+
+    // The free tasks
+    private static final ObjectPool<PacketTask> POOL =
+        new ObjectPool<PacketTask>(PacketTask::new);
+
+    // What the task does
+    private Kind kind;
+
+    // The node the task belongs to
+    private Node node;
+
+    // The packet, retained by the task
+    private Packet packet;
+
+    // The MAC address of the target node/nodes, unused for deliveries
+    private MacAddress address;
+
+    // The time, in milliseconds, at which a flood stops
+    private long endTime;
+
+    /**
+     * Takes a task from the pool, retaining the packet for it
+     *
+     * @param kind What the task does
+     * @param node The node the task belongs to
+     * @param packet The packet
+     * @param address The MAC address of the target node/nodes
+     * @param endTime The time, in milliseconds, at which a flood stops
+     * @return The task
+     */
+    static PacketTask obtain(Kind kind,
+                             Node node,
+                             Packet packet,
+                             MacAddress address,
+                             long endTime) {
+        PacketTask task = POOL.acquire();
+        task.kind = kind;
+        task.node = node;
+        task.packet = packet.retain();
+        task.address = address;
+        task.endTime = endTime;
+        return task;
+    }
+
+    /**
+     * Runs the step, then releases the packet and returns the task to the
+     * pool, unless a flood goes on
+     */
+    @Override
+    public void run() {
+        switch (this.kind) {
+        case TRANSMIT:
+            this.node.getNetwork().sendPacket(this.node.getId(),
+                                              this.packet,
+                                              this.address);
+            break;
+        case DELIVER:
+            this.node.handlePacket(this.packet);
+            break;
+        case FLOOD:
+            Scheduler scheduler = this.node.getScheduler();
+            if (scheduler.getCurrentTimeInMillis() < this.endTime) {
+                this.node.sendPacket(this.packet, this.address);
+                scheduler.schedule(this.node, Node.TRANSMISSION_DELAY, this);
+                return;
+            }
+            break;
+        }
+        this.recycle();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDroppable() {
+        return this.kind == Kind.DELIVER;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drop() {
+        this.recycle();
+    }
+
+    /**
+     * Releases the packet and returns the task to the pool
+     */
+    private void recycle() {
+        this.packet.release();
+        this.node = null;
+        this.packet = null;
+        this.address = null;
+        POOL.release(this);
+    }
+}
@@ -0,0 +1,113 @@
+package com.secarp.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.protocol.Packet;
+import com.secarp.protocol.ip.Ipv4Header;
+
+/**
+ * A router between broadcast domains
+ * Each interface is a node of its own, in the VLAN it serves, with its own
+ * IP, MAC and address resolution protocol. The hosts of a VLAN use the IP
+ * of its interface as their gateway. A packet with an IPv4 header coming in
+ * on an interface leaves through the interface whose subnet holds its
+ * destination.
+ */
+public class Router {
+    // The interfaces, in the order they were added
+    private List<Node> interfaces;
+
+    // The length of the prefix of the subnet of each interface
+    private List<Integer> prefixLengths;
+
+    // Packets sent on towards their destination
+    private final LongAdder forwarded = new LongAdder();
+
+    // Packets without a route, or out of time to live
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Constructor function
+     */
+    public Router() {
+        this.interfaces = new ArrayList<Node>();
+        this.prefixLengths = new ArrayList<Integer>();
+    }
+
+    /**
+     * Adds an interface
+     * The node must have its VLAN and address resolution protocol set
+     *
+     * @param node The node of the interface
+     * @param prefixLength The length of the prefix of the subnet it serves
+     */
+    public void addInterface(Node node, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 32) {
+            throw new IllegalArgumentException(
+                "Prefix length must be between 0 and 32");
+        }
+        this.interfaces.add(node);
+        this.prefixLengths.add(prefixLength);
+        node.registerReceivable(packet -> this.route(node, packet));
+    }
+
+    /**
+     * Getter for interfaces
+     */
+    public List<Node> getInterfaces() {
+        return this.interfaces;
+    }
+
+    /**
+     * Returns the number of packets sent on towards their destination
+     */
+    public long getForwarded() {
+        return this.forwarded.sum();
+    }
+
+    /**
+     * Returns the number of packets without a route, or out of time to live
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Sends a packet that came in on an interface on towards its destination
+     *
+     * @param ingress The interface the packet came in on
+     * @param packet The packet
+     */
+    private void route(Node ingress, Packet packet) {
+        if (!(packet.getHeader() instanceof Ipv4Header)) {
+            return;
+        }
+        Ipv4Header header = (Ipv4Header)packet.getHeader();
+        Ipv4Address destination = header.getDestination();
+        if (destination.matches(ingress.getIpv4Address())) {
+            // For the router itself
+            return;
+        }
+        Node egress = null;
+        for (int i = 0; i < this.interfaces.size(); i++) {
+            Node node = this.interfaces.get(i);
+            if (node.getIpv4Address().matches(destination,
+                                              this.prefixLengths.get(i))) {
+                egress = node;
+                break;
+            }
+        }
+        if (egress == null || header.getTtl() <= 1) {
+            this.dropped.increment();
+            return;
+        }
+        this.forwarded.increment();
+        Packet routed = packet.withHeader(new Ipv4Header(header.getSource(),
+                                                         destination,
+                                                         header.getTtl() - 1));
+        egress.sendPacket(routed, destination);
+    }
+}
@@ -0,0 +1,153 @@
+package com.secarp.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values with a bounded relative error, in the
+ * style of HdrHistogram
+ * Values below 128 get a bucket each. Above that, every power of 2 is split
+ * into 64 buckets, so a value is off by less than 1/64 of itself. Recording
+ * a value costs a few atomic increments. The buckets are allocated with the
+ * first value, and never after.
+ */
+public class Histogram {
+    // Number of bits of a value kept exactly
+    private static final int SUB_BUCKET_BITS = 7;
+
+    // Number of buckets per power of 2
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+
+    // Number of buckets covering all the long values
+    private static final int BUCKET_COUNT =
+        (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF_COUNT +
+        SUB_BUCKET_HALF_COUNT;
+
+    // Count of values in each bucket, null till a value is recorded
+    private volatile AtomicLongArray counts;
+
+    // Number of values recorded
+    private final LongAdder count;
+
+    // Sum of values recorded
+    private final LongAdder sum;
+
+    // Largest value recorded
+    private final LongAccumulator max;
+
+    /**
+     * Constructor function
+     */
+    public Histogram() {
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a value
+     *
+     * @param value The value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        AtomicLongArray counts = this.counts;
+        if (counts == null) {
+            counts = this.allocateCounts();
+        }
+        counts.incrementAndGet(bucket(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of values recorded
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the largest value recorded, 0 if none was
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, 0 if none was
+     */
+    public double getMean() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : (double)this.sum.sum() / count;
+    }
+
+    /**
+     * Returns the value at a percentile of the values recorded
+     * Values recorded during the call may or may not be taken into account
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The highest value of the bucket the percentile falls in, 0 if
+     * no value was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        AtomicLongArray buckets = this.counts;
+        if (buckets == null) {
+            return 0;
+        }
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Allocates the buckets, unless another thread just did
+     */
+    private synchronized AtomicLongArray allocateCounts() {
+        if (this.counts == null) {
+            this.counts = new AtomicLongArray(BUCKET_COUNT);
+        }
+        return this.counts;
+    }
+
+    /**
+     * Returns the bucket of a value
+     */
+    static int bucket(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude < SUB_BUCKET_BITS) {
+            return (int)value;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS + 1;
+        return shift * SUB_BUCKET_HALF_COUNT + (int)(value >>> shift);
+    }
+
+    /**
+     * Returns the highest value falling in a bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKET_HALF_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = bucket - shift * SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,126 @@
+package com.secarp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes a snapshot of metrics as read-only JMX attributes
+ * Every read takes a new snapshot
+ */
+public class MetricsMBean implements DynamicMBean {
+    // The system property turning on JMX registration of the nodes
+    public static final String JMX_PROPERTY = "secarp.jmx";
+
+    // Takes the snapshot
+    private final Supplier<Map<String, Long>> snapshot;
+
+    /**
+     * Constructor function
+     *
+     * @param snapshot Takes a snapshot of the metrics
+     */
+    public MetricsMBean(Supplier<Map<String, Long>> snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Checks whether the nodes should be registered with JMX
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(JMX_PROPERTY);
+    }
+
+    /**
+     * Registers metrics with the platform MBean server
+     *
+     * @param name The object name, e.g. com.secarp:type=Node,id=0
+     * @param snapshot Takes a snapshot of the metrics
+     */
+    public static void register(String name,
+                                Supplier<Map<String, Long>> snapshot) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            if (ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(objectName);
+            }
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new MetricsMBean(snapshot), objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + name, e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute)
+        throws AttributeNotFoundException {
+        Long value = this.snapshot.get().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> snapshot = this.snapshot.get();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Long value = snapshot.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute)
+        throws AttributeNotFoundException {
+        // Metrics are read-only
+        throw new AttributeNotFoundException(attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+        throws ReflectionException {
+        // Metrics have no operations
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Long> snapshot = this.snapshot.get();
+        MBeanAttributeInfo[] attributes =
+            new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (String name : snapshot.keySet()) {
+            attributes[i++] = new MBeanAttributeInfo(
+                name, Long.class.getName(), name, true, false, false);
+        }
+        return new MBeanInfo(this.getClass().getName(),
+                             "Metrics of a node",
+                             attributes,
+                             null,
+                             new MBeanOperationInfo[0],
+                             null);
+    }
+}
@@ -0,0 +1,55 @@
+package com.secarp.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the packets a node sends and receives
+ * The counters are striped, so nodes running on many threads do not
+ * contend on them
+ */
+public class NodeMetrics {
+    // Packets sent, to a single MAC or to all the nodes
+    private final LongAdder unicastsSent = new LongAdder();
+    private final LongAdder broadcastsSent = new LongAdder();
+
+    // Packets received
+    private final LongAdder packetsReceived = new LongAdder();
+
+    /**
+     * Counts a packet sent
+     *
+     * @param broadcast Whether the packet was sent to all the nodes
+     */
+    public void packetSent(boolean broadcast) {
+        if (broadcast) {
+            this.broadcastsSent.increment();
+        } else {
+            this.unicastsSent.increment();
+        }
+    }
+
+    /**
+     * Counts a packet received
+     */
+    public void packetReceived() {
+        this.packetsReceived.increment();
+    }
+
+    /**
+     * Returns the current values of the counters
+     *
+     * @return The values by name
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<String, Long>();
+        long unicastsSent = this.unicastsSent.sum();
+        long broadcastsSent = this.broadcastsSent.sum();
+        snapshot.put("PacketsSent", unicastsSent + broadcastsSent);
+        snapshot.put("UnicastsSent", unicastsSent);
+        snapshot.put("BroadcastsSent", broadcastsSent);
+        snapshot.put("PacketsReceived", this.packetsReceived.sum());
+        return snapshot;
+    }
+}
@@ -0,0 +1,152 @@
+package com.secarp.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.secarp.protocol.arp.ArpCache;
+
+/**
+ * Counts what an address resolution protocol does, and how long its
+ * resolutions take
+ * The counters are striped, so nodes running on many threads do not
+ * contend on them
+ */
+public class ResolutionMetrics {
+    // The caches of the protocol, by name
+    private final Map<String, ArpCache> caches =
+        new LinkedHashMap<String, ArpCache>();
+
+    // Hits and misses of each cache, in the order of the caches
+    private LongAdder[] hits = new LongAdder[0];
+    private LongAdder[] misses = new LongAdder[0];
+
+    // Conflict checks that found more than one MAC
+    private final LongAdder conflicts = new LongAdder();
+
+    // Flood requests sent and flood replies started
+    private final LongAdder floodRequests = new LongAdder();
+    private final LongAdder floodReplies = new LongAdder();
+
+    // Resolutions that went to the network, and those that failed
+    private final LongAdder resolutions = new LongAdder();
+    private final LongAdder failedResolutions = new LongAdder();
+
+    // Time taken by resolutions that went to the network, in milliseconds
+    private final Histogram resolutionLatency = new Histogram();
+
+    /**
+     * Adds a cache whose lookups are counted
+     * Meant to be called while the protocol is being set up
+     *
+     * @param name The name of the cache
+     * @param cache The cache
+     * @return The index of the cache, to count its lookups with
+     */
+    public synchronized int addCache(String name, ArpCache cache) {
+        int index = this.caches.size();
+        this.caches.put(name, cache);
+        LongAdder[] hits = new LongAdder[index + 1];
+        LongAdder[] misses = new LongAdder[index + 1];
+        System.arraycopy(this.hits, 0, hits, 0, index);
+        System.arraycopy(this.misses, 0, misses, 0, index);
+        hits[index] = new LongAdder();
+        misses[index] = new LongAdder();
+        this.hits = hits;
+        this.misses = misses;
+        return index;
+    }
+
+    /**
+     * Counts a cache lookup
+     *
+     * @param cache The index of the cache
+     * @param hit Whether an entry was found
+     */
+    public void cacheLookup(int cache, boolean hit) {
+        if (hit) {
+            this.hits[cache].increment();
+        } else {
+            this.misses[cache].increment();
+        }
+    }
+
+    /**
+     * Counts a conflict check that found more than one MAC
+     */
+    public void conflict() {
+        this.conflicts.increment();
+    }
+
+    /**
+     * Returns the number of conflict checks that found more than one MAC
+     */
+    public long getConflicts() {
+        return this.conflicts.sum();
+    }
+
+    /**
+     * Counts a flood request sent
+     */
+    public void floodRequest() {
+        this.floodRequests.increment();
+    }
+
+    /**
+     * Counts a flood of replies started
+     */
+    public void floodReply() {
+        this.floodReplies.increment();
+    }
+
+    /**
+     * Counts a resolution that went to the network
+     *
+     * @param latency The time it took in milliseconds
+     * @param resolved Whether it found a MAC
+     */
+    public void resolution(long latency, boolean resolved) {
+        this.resolutions.increment();
+        if (!resolved) {
+            this.failedResolutions.increment();
+        }
+        this.resolutionLatency.record(latency);
+    }
+
+    /**
+     * Getter for resolution latency
+     */
+    public Histogram getResolutionLatency() {
+        return this.resolutionLatency;
+    }
+
+    /**
+     * Returns the current values of the counters and of a few percentiles
+     * of the resolution latency
+     *
+     * @return The values by name
+     */
+    public synchronized Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<String, Long>();
+        int index = 0;
+        for (Map.Entry<String, ArpCache> entry : this.caches.entrySet()) {
+            String name = entry.getKey();
+            snapshot.put(name + "Hits", this.hits[index].sum());
+            snapshot.put(name + "Misses", this.misses[index].sum());
+            snapshot.put(name + "ExpiredLookups",
+                         entry.getValue().getExpiredLookups());
+            index++;
+        }
+        snapshot.put("Conflicts", this.conflicts.sum());
+        snapshot.put("FloodRequests", this.floodRequests.sum());
+        snapshot.put("FloodReplies", this.floodReplies.sum());
+        snapshot.put("Resolutions", this.resolutions.sum());
+        snapshot.put("FailedResolutions", this.failedResolutions.sum());
+        Histogram latency = this.resolutionLatency;
+        snapshot.put("ResolutionLatencyP50", latency.getValueAtPercentile(50));
+        snapshot.put("ResolutionLatencyP90", latency.getValueAtPercentile(90));
+        snapshot.put("ResolutionLatencyP99", latency.getValueAtPercentile(99));
+        snapshot.put("ResolutionLatencyMax", latency.getMax());
+        return snapshot;
+    }
+}
@@ -0,0 +1,132 @@
+package com.secarp.network;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.secarp.address.MacAddress;
+
+/**
+ * The MAC address table of a learning switch
+ * Holds the port each source MAC was last seen on, for a bounded number of
+ * MACs. An entry not refreshed for the aging time is forgotten. A full
+ * table learns no new MAC till an entry ages out, as the switches
+ * exhausted by MAC flooding do.
+ */
+public class CamTable {
+    // Returned by lookup for unknown MACs
+    public static final int UNKNOWN_PORT = -1;
+
+    // Maximum number of entries
+    private int capacity;
+
+    // Time in milliseconds after which an entry not refreshed is forgotten
+    private long agingTime;
+
+    // The entries, from the least recently refreshed to the most
+    private LinkedHashMap<MacAddress, Entry> entries;
+
+    // Number of MACs not learned because the table was full
+    private long overflows;
+
+    /**
+     * The port of a MAC and the time it was last seen at
+     */
+    private static class Entry {
+        int port;
+        long time;
+
+        Entry(int port, long time) {
+            this.port = port;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Constructor function
+     *
+     * @param capacity Maximum number of entries
+     * @param agingTime Time in milliseconds after which an entry is forgotten
+     */
+    public CamTable(int capacity, long agingTime) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.agingTime = agingTime;
+        this.entries = new LinkedHashMap<MacAddress, Entry>();
+    }
+
+    /**
+     * Records the port a MAC was seen on
+     *
+     * @param macAddress The source MAC of a frame
+     * @param port The port the frame came in on
+     * @param time The current time in milliseconds
+     */
+    public synchronized void learn(MacAddress macAddress, int port, long time) {
+        // Moving the entry to the end keeps the entries in the order they
+        // age out
+        Entry entry = this.entries.remove(macAddress);
+        if (entry == null) {
+            this.expire(time);
+            if (this.entries.size() == this.capacity) {
+                this.overflows++;
+                return;
+            }
+            entry = new Entry(port, time);
+        } else {
+            entry.port = port;
+            entry.time = time;
+        }
+        this.entries.put(macAddress, entry);
+    }
+
+    /**
+     * Returns the port a MAC was last seen on
+     *
+     * @param macAddress The destination MAC of a frame
+     * @param time The current time in milliseconds
+     * @return The port, UNKNOWN_PORT if the MAC was not seen or aged out
+     */
+    public synchronized int lookup(MacAddress macAddress, long time) {
+        Entry entry = this.entries.get(macAddress);
+        if (entry == null) {
+            return UNKNOWN_PORT;
+        }
+        if (time - entry.time >= this.agingTime) {
+            this.entries.remove(macAddress);
+            return UNKNOWN_PORT;
+        }
+        return entry.port;
+    }
+
+    /**
+     * Returns the number of entries, including those that aged out but were
+     * not removed yet
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the number of MACs not learned because the table was full
+     */
+    public synchronized long getOverflows() {
+        return this.overflows;
+    }
+
+    /**
+     * Removes the entries that aged out
+     */
+    private void expire(long time) {
+        Iterator<Map.Entry<MacAddress, Entry>> iterator =
+            this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (time - iterator.next().getValue().time < this.agingTime) {
+                return;
+            }
+            iterator.remove();
+        }
+    }
+}
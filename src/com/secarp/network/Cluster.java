@@ -0,0 +1,250 @@
+package com.secarp.network;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/**
+ * The socket channels between the processes of a distributed simulation
+ * Every process listens on its own address and connects to all the others,
+ * so every pair of processes is joined by one channel each way. Messages
+ * are exchanged all at once, with a selector writing to and reading from
+ * all the peers at the same time, so that no two processes ever wait on
+ * each other's full socket buffers.
+ */
+class Cluster implements Closeable {
+    // Time in milliseconds to keep trying to reach a peer that has not
+    // started listening yet
+    private static final long CONNECT_TIMEOUT = 60000;
+
+    // Time in milliseconds to wait before trying to reach a peer again
+    private static final long CONNECT_RETRY_INTERVAL = 100;
+
+    // The address each process listens on, by rank
+    private final List<InetSocketAddress> members;
+
+    // The rank of this process
+    private final int rank;
+
+    // The channels towards and from each peer, null for this process
+    private SocketChannel[] outgoing;
+    private SocketChannel[] incoming;
+
+    // The selection keys of the channels, by rank of the peer
+    private SelectionKey[] outgoingKeys;
+    private SelectionKey[] incomingKeys;
+
+    // Multiplexes the channels during an exchange
+    private Selector selector;
+
+    /**
+     * Constructor function
+     *
+     * @param members The address each process listens on, by rank
+     * @param rank The rank of this process
+     */
+    Cluster(List<InetSocketAddress> members, int rank) {
+        if (rank < 0 || rank >= members.size()) {
+            throw new IllegalArgumentException(
+                "Rank " + rank + " is not in a cluster of " + members.size());
+        }
+        this.members = members;
+        this.rank = rank;
+    }
+
+    /**
+     * Getter for the number of processes
+     */
+    int size() {
+        return this.members.size();
+    }
+
+    /**
+     * Getter for rank
+     */
+    int getRank() {
+        return this.rank;
+    }
+
+    /**
+     * Connects to all the peers, waiting for them to start if needed
+     */
+    void connect() throws IOException {
+        int size = this.members.size();
+        this.outgoing = new SocketChannel[size];
+        this.incoming = new SocketChannel[size];
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(this.members.get(this.rank));
+            for (int i = 0; i < size; i++) {
+                if (i != this.rank) {
+                    this.outgoing[i] = connect(this.members.get(i));
+                    ByteBuffer hello = ByteBuffer.allocate(4);
+                    hello.putInt(this.rank).flip();
+                    writeFully(this.outgoing[i], hello);
+                }
+            }
+            for (int i = 1; i < size; i++) {
+                SocketChannel channel = server.accept();
+                ByteBuffer hello = ByteBuffer.allocate(4);
+                readFully(channel, hello);
+                int peer = hello.getInt(0);
+                if (peer < 0 || peer >= size || peer == this.rank ||
+                    this.incoming[peer] != null) {
+                    channel.close();
+                    throw new IOException("Unexpected peer " + peer);
+                }
+                this.incoming[peer] = channel;
+            }
+        }
+        this.selector = Selector.open();
+        this.outgoingKeys = new SelectionKey[size];
+        this.incomingKeys = new SelectionKey[size];
+        for (int i = 0; i < size; i++) {
+            if (i != this.rank) {
+                this.outgoing[i].configureBlocking(false);
+                this.outgoing[i].socket().setTcpNoDelay(true);
+                this.outgoingKeys[i] =
+                    this.outgoing[i].register(this.selector, 0, i);
+                this.incoming[i].configureBlocking(false);
+                this.incomingKeys[i] =
+                    this.incoming[i].register(this.selector, 0, i);
+            }
+        }
+    }
+
+    /**
+     * Sends a message to every peer and receives one from each
+     *
+     * @param message The message, from its position to its limit
+     * @return The message of each peer, by rank, null for this process
+     */
+    ByteBuffer[] exchange(ByteBuffer message) throws IOException {
+        int size = this.members.size();
+        ByteBuffer framed = ByteBuffer.allocate(4 + message.remaining());
+        framed.putInt(message.remaining()).put(message.duplicate()).flip();
+
+        ByteBuffer[] writes = new ByteBuffer[size];
+        ByteBuffer[] lengths = new ByteBuffer[size];
+        ByteBuffer[] reads = new ByteBuffer[size];
+        int pending = 0;
+        for (int i = 0; i < size; i++) {
+            if (i != this.rank) {
+                writes[i] = framed.duplicate();
+                lengths[i] = ByteBuffer.allocate(4);
+                this.outgoingKeys[i].interestOps(SelectionKey.OP_WRITE);
+                this.incomingKeys[i].interestOps(SelectionKey.OP_READ);
+                pending += 2;
+            }
+        }
+        while (pending > 0) {
+            this.selector.select();
+            for (SelectionKey key : this.selector.selectedKeys()) {
+                int peer = (Integer)key.attachment();
+                SocketChannel channel = (SocketChannel)key.channel();
+                if (key.isWritable()) {
+                    channel.write(writes[peer]);
+                    if (!writes[peer].hasRemaining()) {
+                        key.interestOps(0);
+                        pending--;
+                    }
+                } else if (key.isReadable()) {
+                    if (reads[peer] == null) {
+                        read(channel, lengths[peer]);
+                        if (lengths[peer].hasRemaining()) {
+                            continue;
+                        }
+                        reads[peer] =
+                            ByteBuffer.allocate(lengths[peer].getInt(0));
+                    }
+                    read(channel, reads[peer]);
+                    if (!reads[peer].hasRemaining()) {
+                        reads[peer].flip();
+                        key.interestOps(0);
+                        pending--;
+                    }
+                }
+            }
+            this.selector.selectedKeys().clear();
+        }
+        return reads;
+    }
+
+    /**
+     * Closes all the channels
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.selector != null) {
+            this.selector.close();
+        }
+        for (int i = 0; i < this.members.size(); i++) {
+            if (this.outgoing != null && this.outgoing[i] != null) {
+                this.outgoing[i].close();
+            }
+            if (this.incoming != null && this.incoming[i] != null) {
+                this.incoming[i].close();
+            }
+        }
+    }
+
+    /**
+     * Connects to a peer, retrying till it listens or the timeout passes
+     */
+    private static SocketChannel connect(InetSocketAddress address)
+        throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        while (true) {
+            try {
+                return SocketChannel.open(address);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(CONNECT_RETRY_INTERVAL);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads from a non blocking channel, failing if the peer has left
+     */
+    private static void read(SocketChannel channel, ByteBuffer buffer)
+        throws IOException {
+        if (channel.read(buffer) < 0) {
+            throw new EOFException("Peer closed the connection");
+        }
+    }
+
+    /**
+     * Writes a whole buffer to a blocking channel
+     */
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Fills a whole buffer from a blocking channel
+     */
+    private static void readFully(SocketChannel channel, ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            read(channel, buffer);
+        }
+    }
+}
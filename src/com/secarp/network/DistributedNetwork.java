@@ -0,0 +1,202 @@
+package com.secarp.network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.secarp.address.MacAddress;
+import com.secarp.device.Node;
+import com.secarp.protocol.Packet;
+import com.secarp.scheduler.DistributedScheduler;
+import com.secarp.scheduler.Scheduler;
+
+/**
+ * One partition of an Ethernet network spread over several processes
+ * Frames reach the nodes of this process as on Ethernet. Every frame is
+ * also encoded into the batch of the current window, which is handed to all
+ * the other processes at the end of the window, each delivering it to its
+ * own nodes the frame is addressed to.
+ *
+ * A batch is the time of the earliest pending event of its sender and the
+ * number of frames, followed by the frames. A frame is the time it was sent
+ * at, its VLAN, its destination MAC address and the length of the encoded
+ * packet, followed by the encoded packet.
+ */
+public class DistributedNetwork extends Ethernet
+    implements DistributedScheduler.Coordinator {
+    // The initial size of the batch of a window in bytes
+    private static final int INITIAL_BATCH_SIZE = 4096;
+
+    // The size of a batch without frames, and of a frame without its packet
+    private static final int BATCH_HEADER_LENGTH = 12;
+    private static final int FRAME_HEADER_LENGTH = 24;
+
+    // The connections to the other processes
+    private final Cluster cluster;
+
+    // Whether the connections have been made yet
+    private boolean connected;
+
+    // The frames sent to the other processes during the current window,
+    // after room for the batch header
+    private ByteBuffer batch;
+
+    // The number of frames in the batch
+    private int frames;
+
+    // The earliest time at which a frame of the batch reaches a node
+    private long earliestArrival;
+
+    /**
+     * Constructor
+     *
+     * @param capacity The capacity of the receiving queue
+     * @param scheduler The scheduler of this process
+     * @param members The address each process listens on, by rank
+     * @param rank The rank of this process
+     */
+    public DistributedNetwork(int capacity,
+                              DistributedScheduler scheduler,
+                              List<InetSocketAddress> members,
+                              int rank) {
+        super(capacity, scheduler);
+        this.cluster = new Cluster(members, rank);
+        scheduler.setCoordinator(this);
+        this.batch = ByteBuffer.allocate(INITIAL_BATCH_SIZE);
+        this.clearBatch();
+    }
+
+    /**
+     * Returns the number of processes
+     */
+    public int getSize() {
+        return this.cluster.size();
+    }
+
+    /**
+     * Getter for rank
+     */
+    public int getRank() {
+        return this.cluster.getRank();
+    }
+
+    /**
+     * @{inheritDoc}
+     * The frame is also queued for the other processes
+     */
+    @Override
+    public void sendPacket(int id,
+                           Packet packet,
+                           MacAddress address) {
+        super.sendPacket(id, packet, address);
+        if (this.cluster.size() == 1) {
+            return;
+        }
+        long time = this.getScheduler().getCurrentTimeInMillis();
+        ByteBuffer frame = packet.getBuffer();
+        this.reserve(FRAME_HEADER_LENGTH + frame.remaining());
+        this.batch.putLong(time)
+            .putInt(this.nodes.get(id).getVlan())
+            .putLong(address.toLong())
+            .putInt(frame.remaining())
+            .put(frame);
+        this.frames++;
+        this.earliestArrival = Math.min(this.earliestArrival,
+                                        time + Node.TRANSMISSION_DELAY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long synchronize(long nextTime) {
+        try {
+            if (!this.connected) {
+                this.cluster.connect();
+                this.connected = true;
+            }
+            long startTime = Math.min(nextTime, this.earliestArrival);
+            this.batch.putLong(0, nextTime).putInt(8, this.frames).flip();
+            ByteBuffer[] received = this.cluster.exchange(this.batch);
+            this.clearBatch();
+            for (ByteBuffer peerBatch : received) {
+                if (peerBatch != null) {
+                    startTime = Math.min(startTime, this.deliver(peerBatch));
+                }
+            }
+            if (startTime == Long.MAX_VALUE) {
+                this.cluster.close();
+                this.connected = false;
+            }
+            return startTime;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Schedules the frames of a batch of another process for the nodes of
+     * this one they are addressed to
+     *
+     * @param peerBatch The batch
+     * @return The earliest of the pending events of the sender and the
+     * arrivals of its frames
+     */
+    private long deliver(ByteBuffer peerBatch) {
+        Scheduler scheduler = this.getScheduler();
+        long currentTime = scheduler.getCurrentTimeInMillis();
+        long earliest = peerBatch.getLong();
+        int count = peerBatch.getInt();
+        for (int i = 0; i < count; i++) {
+            long arrival = peerBatch.getLong() + Node.TRANSMISSION_DELAY;
+            int vlan = peerBatch.getInt();
+            MacAddress address = MacAddress.valueOf(peerBatch.getLong());
+            int length = peerBatch.getInt();
+            ByteBuffer frame = peerBatch.slice();
+            frame.limit(length);
+            peerBatch.position(peerBatch.position() + length);
+            earliest = Math.min(earliest, arrival);
+
+            Packet packet = new Packet(frame);
+            Node[] targets = address.isBroadcast()
+                ? this.getVlanMembers(vlan)
+                : this.getNodes(address);
+            for (Node node : targets) {
+                if (node.getVlan() == vlan) {
+                    scheduler.schedule(node,
+                                       arrival - currentTime,
+                                       () -> node.handlePacket(packet));
+                }
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * Empties the batch, leaving room for its header
+     */
+    private void clearBatch() {
+        this.batch.clear();
+        this.batch.position(BATCH_HEADER_LENGTH);
+        this.frames = 0;
+        this.earliestArrival = Long.MAX_VALUE;
+    }
+
+    /**
+     * Grows the batch till it has room for a number of bytes
+     */
+    private void reserve(int length) {
+        if (this.batch.remaining() < length) {
+            int capacity = this.batch.capacity();
+            while (capacity - this.batch.position() < length) {
+                capacity *= 2;
+            }
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            this.batch.flip();
+            grown.put(this.batch);
+            this.batch = grown;
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.secarp.network;
 
 import com.secarp.address.MacAddress;
-import com.secarp.common.Timer;
 import com.secarp.device.Node;
 import com.secarp.protocol.Packet;
+import com.secarp.scheduler.Scheduler;
 
 /**
  * An abstraction over the ethernet network
+ * Every node of a VLAN is on the same segment, and nodes of different VLANs
+ * only reach each other through a router. Packets are immutable, so every
+ * receiver of a frame gets the same instance.
  * This assumes that packets do not get sniffed by any other node
  */
 public class Ethernet extends Network {
@@ -19,6 +22,16 @@ public class Ethernet extends Network {
         super(capacity);
     }
 
+    /**
+     * Constructor
+     *
+     * @param capacity The capacity of the receiving queue
+     * @param scheduler The scheduler running the tasks of the nodes
+     */
+    public Ethernet(int capacity, Scheduler scheduler) {
+        super(capacity, scheduler);
+    }
+
     /**
      * @{inheritDoc}
      */
@@ -26,22 +39,18 @@ public class Ethernet extends Network {
     public void sendPacket(int id,
                            Packet packet,
                            MacAddress address) {
+        // A frame never leaves the broadcast domain of its sender
+        int vlan = this.nodes.get(id).getVlan();
         if (address.isBroadcast()) {
-            for (Node node : this.nodes) {
+            for (Node node : this.getVlanMembers(vlan)) {
                 if (node.getId() != id) {
-                    node.handlePacket(packet);
+                    node.receivePacket(packet);
                 }
             }
         } else {
-            for (Node node : this.nodes) {
-                if (node.
-                    getMacAddress().
-                    toString().
-                    equals(address.
-                           toString()
-                           )
-                    ) {
-                    node.handlePacket(packet);
+            for (Node node : this.getNodes(address)) {
+                if (node.getVlan() == vlan) {
+                    node.receivePacket(packet);
                 }
             }
         }
@@ -1,36 +1,180 @@
 package com.secarp.network;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.secarp.address.MacAddress;
 import com.secarp.common.CircularQueue;
 import com.secarp.device.Node;
+import com.secarp.metrics.MetricsMBean;
 import com.secarp.protocol.Packet;
+import com.secarp.scheduler.Scheduler;
+import com.secarp.scheduler.ThreadScheduler;
+import com.secarp.trace.TraceRecorder;
 
 /**
  * An abstraction of a particular network
  * This network can be Ethernet, CDMA, etc.
  */
 public abstract class Network {
+    // The broadcast domain of nodes not assigned to any other
+    public static final int DEFAULT_VLAN = 1;
+
+    // Returned for MAC addresses no node is using
+    private static final Node[] NO_NODES = new Node[0];
 
     // List of nodes in the network;
     protected ArrayList<Node> nodes;
 
+    // The nodes using each MAC address
+    // More than one node may use the same MAC address, e.g. when spoofing
+    private ConcurrentHashMap<MacAddress, Members> macIndex;
+
+    // The members of each broadcast domain, by VLAN id
+    // Broadcasts go through the arrays of these only
+    private ConcurrentHashMap<Integer, Members> vlanMembers;
+
     // Receive packet queue for each node
     private CircularQueue<Packet>[] recQ;
 
     // The id of the new node to be added
     private int id;
 
+    // The scheduler running the tasks of all nodes in the network
+    private Scheduler scheduler;
+
+    // The trace of the events in the network, null if not traced
+    private TraceRecorder traceRecorder;
+
+    /**
+     * The nodes of a broadcast domain or of a MAC address
+     * The nodes are kept in an array with room to grow, so adding nodes one
+     * by one takes linear time overall. Readers get an array of exactly the
+     * nodes, made again only after a change.
+     */
+    private static class Members {
+        // The nodes, followed by room for more
+        private Node[] nodes;
+
+        // The number of nodes
+        private int size;
+
+        // The array handed out to readers, null after a change
+        private volatile Node[] published;
+
+        /**
+         * Constructor function
+         */
+        Members() {
+            this.nodes = new Node[1];
+            this.size = 0;
+        }
+
+        /**
+         * Adds a node after the others
+         */
+        synchronized void add(Node node) {
+            if (this.size == this.nodes.length) {
+                // Never writing into an array that may have been handed out
+                this.nodes = Arrays.copyOf(this.nodes, 2 * this.size);
+            }
+            this.nodes[this.size++] = node;
+            this.published = null;
+        }
+
+        /**
+         * Removes a node, keeping the others in order
+         *
+         * @return Whether any node is left
+         */
+        synchronized boolean remove(Node node) {
+            int index = -1;
+            for (int i = 0; i < this.size; i++) {
+                if (this.nodes[i] == node) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index >= 0) {
+                Node[] remaining = new Node[this.nodes.length];
+                System.arraycopy(this.nodes, 0, remaining, 0, index);
+                System.arraycopy(this.nodes, index + 1,
+                                 remaining, index,
+                                 this.size - index - 1);
+                this.nodes = remaining;
+                this.size--;
+                this.published = null;
+            }
+            return this.size > 0;
+        }
+
+        /**
+         * Returns exactly the nodes, in the order they were added
+         * The returned array must not be modified
+         */
+        Node[] toArray() {
+            Node[] published = this.published;
+            if (published == null) {
+                synchronized (this) {
+                    published = this.published;
+                    if (published == null) {
+                        published = this.size == this.nodes.length
+                            ? this.nodes
+                            : Arrays.copyOf(this.nodes, this.size);
+                        this.published = published;
+                    }
+                }
+            }
+            return published;
+        }
+    }
+
     /**
      * Constructor
+     * Every task runs in a thread of its own, in real time
      *
      * @param capacity The capacity of the receiving queue
      */
     public Network(int capacity) {
+        this(capacity, new ThreadScheduler());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity The capacity of the receiving queue
+     * @param scheduler The scheduler running the tasks of the nodes
+     */
+    public Network(int capacity, Scheduler scheduler) {
         this.nodes = new ArrayList<Node>();
+        this.macIndex = new ConcurrentHashMap<MacAddress, Members>();
+        this.vlanMembers = new ConcurrentHashMap<Integer, Members>();
         //this.recQ = (CircularQueue<Packet>[])new Object[capacity];
         this.id = 0;
+        this.scheduler = scheduler;
+        this.traceRecorder = TraceRecorder.fromSystemProperties();
+    }
+
+    /**
+     * Getter for scheduler
+     */
+    public Scheduler getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Getter and setter for trace recorder
+     * The trace recorder is null if the network is not traced
+     */
+    public TraceRecorder getTraceRecorder() {
+        return this.traceRecorder;
+    }
+
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
     }
 
     /**
@@ -43,6 +187,154 @@ public abstract class Network {
         node.setNetwork(this);
         this.nodes.add(this.id, node);
         this.id++;
+        this.updateMacAddress(node, null, node.getMacAddress());
+        enter(this.vlanMembers, node.getVlan(), node);
+        if (MetricsMBean.isEnabled()) {
+            MetricsMBean.register("com.secarp:type=Node,id=" + node.getId(),
+                                  node::getMetricsSnapshot);
+        }
+    }
+
+    /**
+     * Adds many nodes to the network at once
+     * Same as adding them one by one, with the node list grown only once
+     *
+     * @param newNodes The nodes to be added, in the order of their ids
+     */
+    public void addNodes(Collection<? extends Node> newNodes) {
+        this.nodes.ensureCapacity(this.nodes.size() + newNodes.size());
+        boolean jmx = MetricsMBean.isEnabled();
+        for (Node node : newNodes) {
+            node.setId(this.id);
+            node.setNetwork(this);
+            this.nodes.add(node);
+            this.id++;
+            this.updateMacAddress(node, null, node.getMacAddress());
+            enter(this.vlanMembers, node.getVlan(), node);
+            if (jmx) {
+                MetricsMBean.register("com.secarp:type=Node,id=" + node.getId(),
+                                      node::getMetricsSnapshot);
+            }
+        }
+    }
+
+    /**
+     * Returns all the nodes, in the order of their ids
+     * The returned list must not be modified
+     *
+     * @return The nodes
+     */
+    public List<Node> getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Marks the simulation on the network as finished
+     * Closes the loggers of the nodes, so the log keeps nothing about them
+     */
+    public void finish() {
+        for (Node node : this.nodes) {
+            node.getLogger().close();
+        }
+    }
+
+    /**
+     * Returns the nodes using a particular MAC address
+     * The returned array must not be modified
+     *
+     * @param address The MAC address
+     *
+     * @return The nodes, in the order they started using the address
+     */
+    public Node[] getNodes(MacAddress address) {
+        Members members = this.macIndex.get(address);
+        if (members == null) {
+            return NO_NODES;
+        }
+        return members.toArray();
+    }
+
+    /**
+     * Returns the members of a broadcast domain
+     * The returned array must not be modified
+     *
+     * @param vlan The VLAN id
+     *
+     * @return The nodes, in the order they joined the domain
+     */
+    public Node[] getVlanMembers(int vlan) {
+        Members members = this.vlanMembers.get(vlan);
+        if (members == null) {
+            return NO_NODES;
+        }
+        return members.toArray();
+    }
+
+    /**
+     * Moves a node to another broadcast domain
+     * Called whenever the VLAN of a node in the network changes
+     *
+     * @param node The node
+     * @param oldVlan The VLAN id so far
+     * @param newVlan The new VLAN id
+     */
+    public void updateVlan(Node node, int oldVlan, int newVlan) {
+        leave(this.vlanMembers, oldVlan, node);
+        enter(this.vlanMembers, newVlan, node);
+    }
+
+    /**
+     * Moves a node to a new MAC address in the index
+     * Called whenever the MAC address of a node in the network changes
+     *
+     * @param node The node
+     * @param oldAddress The MAC address used so far, null if none
+     * @param newAddress The new MAC address, null if none
+     */
+    public void updateMacAddress(Node node,
+                                 MacAddress oldAddress,
+                                 MacAddress newAddress) {
+        if (oldAddress != null) {
+            leave(this.macIndex, oldAddress, node);
+        }
+        if (newAddress != null) {
+            enter(this.macIndex, newAddress, node);
+        }
+    }
+
+    /**
+     * Adds a node to the members of a key
+     *
+     * @param index The members by key
+     * @param key The key
+     * @param node The node
+     */
+    private static <K> void enter(ConcurrentHashMap<K, Members> index,
+                                  K key,
+                                  Node node) {
+        index.compute(key, (k, members) -> {
+                if (members == null) {
+                    members = new Members();
+                }
+                members.add(node);
+                return members;
+            });
+    }
+
+    /**
+     * Removes a node from the members of a key, dropping the key once no
+     * node is left
+     *
+     * @param index The members by key
+     * @param key The key
+     * @param node The node
+     */
+    private static <K> void leave(ConcurrentHashMap<K, Members> index,
+                                  K key,
+                                  Node node) {
+        index.computeIfPresent(key, (k, members) -> {
+                return members.remove(node) ? members : null;
+            });
     }
 
     /**
@@ -0,0 +1,190 @@
+package com.secarp.network;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.secarp.address.MacAddress;
+import com.secarp.device.Node;
+import com.secarp.protocol.Packet;
+
+/**
+ * A learning switch
+ * Every port leads to a node or to another switch. Frames to a MAC in the
+ * CAM table go out of its port only, broadcasts and frames to unknown MACs
+ * go out of every other port. Switches must be linked as a tree, there is
+ * no spanning tree protocol to break loops.
+ * Every port is a trunk carrying all the VLANs, and a node only gets the
+ * frames of its own VLAN. The CAM table is shared by the VLANs.
+ */
+public class Switch {
+    // The id of the switch in its network
+    private int id;
+
+    // The MAC address table
+    private CamTable camTable;
+
+    // The ports, in the order they were connected
+    private ArrayList<Port> ports;
+
+    // Frames sent out of the port of their destination only
+    private final LongAdder forwarded = new LongAdder();
+
+    // Frames to unknown MACs, sent out of every other port
+    private final LongAdder flooded = new LongAdder();
+
+    // Broadcast frames
+    private final LongAdder broadcasts = new LongAdder();
+
+    /**
+     * What a port is connected to, a node or a port of another switch
+     */
+    private static class Port {
+        final Node node;
+        final Switch peer;
+        final int peerPort;
+
+        Port(Node node, Switch peer, int peerPort) {
+            this.node = node;
+            this.peer = peer;
+            this.peerPort = peerPort;
+        }
+    }
+
+    /**
+     * Constructor function
+     *
+     * @param id The id of the switch in its network
+     * @param camCapacity Maximum number of entries of the CAM table
+     * @param agingTime Time in milliseconds after which a CAM entry is
+     * forgotten
+     */
+    public Switch(int id, int camCapacity, long agingTime) {
+        this.id = id;
+        this.camTable = new CamTable(camCapacity, agingTime);
+        this.ports = new ArrayList<Port>();
+    }
+
+    /**
+     * Getter for id
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Getter for CAM table
+     */
+    public CamTable getCamTable() {
+        return this.camTable;
+    }
+
+    /**
+     * Returns the number of frames sent out of the port of their
+     * destination only
+     */
+    public long getForwarded() {
+        return this.forwarded.sum();
+    }
+
+    /**
+     * Returns the number of frames to unknown MACs, sent out of every port
+     */
+    public long getFlooded() {
+        return this.flooded.sum();
+    }
+
+    /**
+     * Returns the number of broadcast frames
+     */
+    public long getBroadcasts() {
+        return this.broadcasts.sum();
+    }
+
+    /**
+     * Connects a node to a new port
+     * Meant to be called while the network is being set up
+     *
+     * @param node The node
+     * @return The port
+     */
+    public int connect(Node node) {
+        this.ports.add(new Port(node, null, 0));
+        return this.ports.size() - 1;
+    }
+
+    /**
+     * Links two switches through a new port of each
+     * Meant to be called while the network is being set up
+     *
+     * @param first A switch
+     * @param second Another switch
+     */
+    public static void link(Switch first, Switch second) {
+        int firstPort = first.ports.size();
+        int secondPort = second.ports.size();
+        first.ports.add(new Port(null, second, secondPort));
+        second.ports.add(new Port(null, first, firstPort));
+    }
+
+    /**
+     * Learns the source of a frame and sends it on
+     *
+     * @param packet The packet carried by the frame
+     * @param source The MAC of the sender
+     * @param destination The MAC of the target node/nodes
+     * @param vlan The VLAN of the frame
+     * @param inPort The port the frame came in on
+     * @param time The current time in milliseconds
+     */
+    public void forward(Packet packet,
+                        MacAddress source,
+                        MacAddress destination,
+                        int vlan,
+                        int inPort,
+                        long time) {
+        this.camTable.learn(source, inPort, time);
+        if (destination.isBroadcast()) {
+            this.broadcasts.increment();
+        } else {
+            int outPort = this.camTable.lookup(destination, time);
+            if (outPort != CamTable.UNKNOWN_PORT) {
+                this.forwarded.increment();
+                if (outPort != inPort) {
+                    this.send(outPort, packet, source, destination, vlan, time);
+                }
+                return;
+            }
+            this.flooded.increment();
+        }
+        for (int port = 0; port < this.ports.size(); port++) {
+            if (port != inPort) {
+                this.send(port, packet, source, destination, vlan, time);
+            }
+        }
+    }
+
+    /**
+     * Sends a frame out of a port
+     * A node only takes the frames of its VLAN addressed to it, or broadcast
+     */
+    private void send(int port,
+                      Packet packet,
+                      MacAddress source,
+                      MacAddress destination,
+                      int vlan,
+                      long time) {
+        Port target = this.ports.get(port);
+        if (target.peer != null) {
+            target.peer.forward(packet,
+                                source,
+                                destination,
+                                vlan,
+                                target.peerPort,
+                                time);
+        } else if (target.node.getVlan() == vlan &&
+                   (destination.isBroadcast() ||
+                    destination.equals(target.node.getMacAddress()))) {
+            target.node.receivePacket(packet);
+        }
+    }
+}
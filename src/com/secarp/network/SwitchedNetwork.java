@@ -0,0 +1,184 @@
+package com.secarp.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.secarp.address.MacAddress;
+import com.secarp.device.Node;
+import com.secarp.protocol.Packet;
+import com.secarp.scheduler.Scheduler;
+
+/**
+ * A network of learning switches
+ * Unlike Ethernet, a unicast frame only reaches the nodes on the way to its
+ * destination once the switches have learnt where it is. The first switch
+ * is created with the network, and nodes are connected to it unless told
+ * otherwise.
+ * This assumes that packets do not get sniffed by any other node
+ */
+public class SwitchedNetwork extends Network {
+    // Default maximum number of entries of a CAM table
+    public static final int CAM_CAPACITY = 8192;
+
+    // Default time in milliseconds after which a CAM entry is forgotten
+    public static final long AGING_TIME = 300000;
+
+    // The switches, by id
+    private ArrayList<Switch> switches;
+
+    // The switch and the port of each node, by node id
+    private ArrayList<Switch> nodeSwitches;
+    private ArrayList<Integer> nodePorts;
+
+    /**
+     * Constructor
+     *
+     * @param capacity The capacity of the receiving queue
+     * @param scheduler The scheduler running the tasks of the nodes
+     */
+    public SwitchedNetwork(int capacity, Scheduler scheduler) {
+        this(capacity, scheduler, CAM_CAPACITY, AGING_TIME);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity The capacity of the receiving queue
+     * @param scheduler The scheduler running the tasks of the nodes
+     * @param camCapacity Maximum number of entries of the CAM table of the
+     * first switch
+     * @param agingTime Time in milliseconds after which a CAM entry of the
+     * first switch is forgotten
+     */
+    public SwitchedNetwork(int capacity,
+                           Scheduler scheduler,
+                           int camCapacity,
+                           long agingTime) {
+        super(capacity, scheduler);
+        this.switches = new ArrayList<Switch>();
+        this.switches.add(new Switch(0, camCapacity, agingTime));
+        this.nodeSwitches = new ArrayList<Switch>();
+        this.nodePorts = new ArrayList<Integer>();
+    }
+
+    /**
+     * Adds a switch, linked to one already in the network
+     *
+     * @param uplink The switch to link the new one to
+     * @param camCapacity Maximum number of entries of the CAM table
+     * @param agingTime Time in milliseconds after which a CAM entry is
+     * forgotten
+     * @return The new switch
+     */
+    public Switch addSwitch(Switch uplink, int camCapacity, long agingTime) {
+        this.checkSwitch(uplink);
+        Switch newSwitch = new Switch(this.switches.size(),
+                                      camCapacity,
+                                      agingTime);
+        Switch.link(uplink, newSwitch);
+        this.switches.add(newSwitch);
+        return newSwitch;
+    }
+
+    /**
+     * Returns all the switches, in the order of their ids
+     * The returned list must not be modified
+     *
+     * @return The switches
+     */
+    public List<Switch> getSwitches() {
+        return this.switches;
+    }
+
+    /**
+     * Adds a new node to the network, connected to the first switch
+     *
+     * @param node The node to be added
+     */
+    @Override
+    public void addNode(Node node) {
+        this.addNode(node, this.switches.get(0));
+    }
+
+    /**
+     * Adds a new node to the network, connected to a switch
+     *
+     * @param node The node to be added
+     * @param networkSwitch The switch the node is connected to
+     */
+    public void addNode(Node node, Switch networkSwitch) {
+        this.checkSwitch(networkSwitch);
+        super.addNode(node);
+        this.connect(node, networkSwitch);
+    }
+
+    /**
+     * Adds many nodes to the network at once, connected to the first switch
+     *
+     * @param newNodes The nodes to be added, in the order of their ids
+     */
+    @Override
+    public void addNodes(Collection<? extends Node> newNodes) {
+        this.addNodes(newNodes, this.switches.get(0));
+    }
+
+    /**
+     * Adds many nodes to the network at once, connected to a switch
+     *
+     * @param newNodes The nodes to be added, in the order of their ids
+     * @param networkSwitch The switch the nodes are connected to
+     */
+    public void addNodes(Collection<? extends Node> newNodes,
+                         Switch networkSwitch) {
+        this.checkSwitch(networkSwitch);
+        super.addNodes(newNodes);
+        this.nodeSwitches.ensureCapacity(this.nodes.size());
+        this.nodePorts.ensureCapacity(this.nodes.size());
+        for (Node node : newNodes) {
+            this.connect(node, networkSwitch);
+        }
+    }
+
+    /**
+     * @{inheritDoc}
+     * The frame enters the network at the switch of the sender
+     */
+    @Override
+    public void sendPacket(int id,
+                           Packet packet,
+                           MacAddress address) {
+        Node node = this.nodes.get(id);
+        this.nodeSwitches.get(id).forward(
+            packet,
+            node.getMacAddress(),
+            address,
+            node.getVlan(),
+            this.nodePorts.get(id),
+            this.getScheduler().getCurrentTimeInMillis());
+    }
+
+    /**
+     * Connects a node that was just added to a switch
+     * What the switches learn from the frames of one node decides where the
+     * frames of the others go, so all nodes are kept on the thread of the
+     * first one
+     */
+    private void connect(Node node, Switch networkSwitch) {
+        this.getScheduler().colocate(this.nodes.get(0), node);
+        this.nodeSwitches.add(networkSwitch);
+        this.nodePorts.add(networkSwitch.connect(node));
+    }
+
+    /**
+     * Checks that a switch belongs to this network
+     */
+    private void checkSwitch(Switch networkSwitch) {
+        int id = networkSwitch.getId();
+        if (id >= this.switches.size() ||
+            this.switches.get(id) != networkSwitch) {
+            throw new IllegalArgumentException(
+                "Switch " + id + " is not in the network");
+        }
+    }
+}
@@ -1,18 +1,75 @@
 package com.secarp.protocol;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
+import com.secarp.device.Node;
+import com.secarp.metrics.ResolutionMetrics;
+import com.secarp.scheduler.Scheduler;
 
 /**
  * An abstraction for different kinds of Address resolution protocols
  */
 public abstract class AddressResolutionProtocol extends Protocol {
+    // What the protocol does and how long its resolutions take
+    protected ResolutionMetrics metrics = new ResolutionMetrics();
+
+    /**
+     * Getter for metrics
+     */
+    public ResolutionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Resolves MAC address for a particular IPv4 address by using the
+     * underlying ARP protocol. Returns without waiting for the resolution.
+     *
+     * @param ipv4Address Ip address of the target node
+     * @return Completes with the Mac Address of the target node as soon as
+     * resolution finishes, with null if it could not be resolved
+     */
+    public abstract CompletableFuture<MacAddress> getMacAddressAsync(
+        Ipv4Address ipv4Address);
+
+    /**
+     * Returns the node on which the protocol stack is installed
+     *
+     * @return The node
+     */
+    public abstract Node getNode();
+
+    /**
+     * Counts a resolution that goes to the network in the metrics, along
+     * with the time it takes
+     *
+     * @param resolution The resolution, just started
+     */
+    protected void measureResolution(CompletableFuture<MacAddress> resolution) {
+        Scheduler scheduler = this.getNode().getScheduler();
+        long startTime = scheduler.getCurrentTimeInMillis();
+        resolution.whenComplete((macAddress, error) -> {
+                this.metrics.resolution(
+                    scheduler.getCurrentTimeInMillis() - startTime,
+                    macAddress != null);
+            });
+    }
+
     /**
      * Returns MAC address for a particular IPv4 address by using the
      * underlying ARP protocol
+     * Blocks till resolution finishes, so it is only allowed when the
+     * scheduler of the node supports blocking
      *
      * @param ipv4Address Ip address of the target node
      * @return Mac Address of the target node
      */
-    public abstract MacAddress getMacAddress(Ipv4Address ipv4Address);
+    public MacAddress getMacAddress(Ipv4Address ipv4Address) {
+        if (!this.getNode().getScheduler().supportsBlocking()) {
+            throw new IllegalStateException(
+                "Blocking resolution is not supported by the scheduler");
+        }
+        return this.getMacAddressAsync(ipv4Address).join();
+    }
 }
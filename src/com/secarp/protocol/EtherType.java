@@ -0,0 +1,24 @@
+package com.secarp.protocol;
+
+/**
+ * The EtherType values identifying the content of an encoded packet
+ */
+public final class EtherType {
+    // Internet Protocol version 4
+    public static final int IPV4 = 0x0800;
+
+    // Address Resolution Protocol
+    public static final int ARP = 0x0806;
+
+    // SecArp, carried in the first IEEE 802 local experimental EtherType
+    public static final int SEC_ARP = 0x88B5;
+
+    // A bare payload without any header, the second local experimental one
+    public static final int DATA = 0x88B6;
+
+    // The length of an EtherType on the wire
+    public static final int LENGTH = 2;
+
+    private EtherType() {
+    }
+}
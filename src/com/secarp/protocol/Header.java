@@ -1,11 +1,58 @@
 package com.secarp.protocol;
 
+import java.nio.ByteBuffer;
+
 /**
  * An Abstraction for the header of a packet
+ * Headers have no setters, so packets can share them
  */
 public abstract class Header {
+    /**
+     * Returns the EtherType identifying the header on the wire
+     *
+     * @return One of the EtherType constants
+     */
+    public abstract int getEtherType();
+
+    /**
+     * Returns the length of the wire form of the header
+     *
+     * @return The length in bytes
+     */
+    public abstract int getLength();
+
+    /**
+     * Writes the wire form of the header at the position of a buffer and
+     * advances the position past it
+     *
+     * @param buffer The buffer, with at least getLength() bytes remaining
+     */
+    public abstract void encode(ByteBuffer buffer);
+
+    /**
+     * Writes the wire form of the header followed by a payload, for headers
+     * with fields depending on the length of the payload
+     *
+     * @param buffer The buffer, with at least getLength() bytes remaining
+     * @param payloadLength The length of the payload in bytes
+     */
+    public void encode(ByteBuffer buffer, int payloadLength) {
+        this.encode(buffer);
+    }
+
     /**
      * Returns a byte representation of the header
      */
-    public abstract byte[] getBytes();
+    public byte[] getBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(this.getLength());
+        this.encode(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Called when the pooled packet holding the header is recycled
+     * Headers taken from a pool go back to it, others are left alone
+     */
+    public void recycle() {
+    }
 }
@@ -1,24 +1,75 @@
 package com.secarp.protocol;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.secarp.common.ObjectPool;
+
+import com.secarp.protocol.arp.ArpHeader;
+import com.secarp.protocol.ip.Ipv4Header;
+import com.secarp.protocol.secarp.SecArpHeader;
+
 /**
  * An abstraction for a packet that is sent between nodes in the network
+ * A packet is either built from a header and payload objects, or wraps an
+ * encoded frame. Each form is derived from the other on demand.
+ *
+ * A packet never changes once built: the header is immutable, and the
+ * payload and the frame are only handed out as read-only views. So the
+ * same instance is handed to every receiver of a broadcast, on any number
+ * of threads. A node needing a modified packet derives a new one with
+ * withHeader() or withPayload(), which shares whatever it does not change.
+ *
+ * Packets taken from the pool with obtain() are reference counted, so the
+ * packets of floods and replies are reused instead of allocated: whoever
+ * keeps such a packet beyond the call that handed it over retains it, and
+ * releases it when done. Once the last reference is released, the packet
+ * and its header go back to the pool, to be rebuilt for another send.
+ * Packets built with a constructor are left to the garbage collector, and
+ * retaining or releasing them does nothing.
+ *
+ * The encoded frame is the EtherType, followed by the wire form of the
+ * header, followed by the payload.
  */
 public class Packet {
-    // The header
-    Header header;
+    // The free pooled packets
+    private static final ObjectPool<Packet> POOL =
+        new ObjectPool<Packet>(Packet::newPooled);
+
+    // Counts the references of pooled packets
+    private static final AtomicIntegerFieldUpdater<Packet> REFERENCES =
+        AtomicIntegerFieldUpdater.newUpdater(Packet.class, "references");
+
+    // The header, null until decoded from the frame
+    private volatile Header header;
 
-    // The payload
-    byte[] payload;
+    // The payload, a read-only buffer from its position to its limit, null
+    // until copied out of the frame
+    private volatile ByteBuffer payload;
+
+    // The encoded frame, a read-only buffer, null until encoded
+    private volatile ByteBuffer buffer;
+
+    // Whether the header and the payload are known without decoding the
+    // frame
+    private final boolean decoded;
+
+    // Whether the packet belongs to the pool
+    private boolean pooled;
+
+    // The number of holders of a pooled packet
+    private volatile int references;
 
     /**
      * Constructors
+     * The payload is copied, so the caller may reuse its array
      */
     public Packet() {
-        this(null, null);
+        this(null, (ByteBuffer)null);
     }
 
     public Packet(Header header) {
-        this(header, null);
+        this(header, (ByteBuffer)null);
     }
 
     public Packet(byte[] payload) {
@@ -26,26 +77,287 @@ public class Packet {
     }
 
     public Packet(Header header, byte[] payload) {
+        this(header,
+             payload == null
+                 ? null
+                 : ByteBuffer.wrap(payload.clone()).asReadOnlyBuffer());
+    }
+
+    /**
+     * Wraps an encoded frame
+     * The frame spans from the position to the limit of the buffer, which
+     * must not be modified afterwards
+     *
+     * @param buffer The encoded frame
+     */
+    public Packet(ByteBuffer buffer) {
+        this.buffer = buffer.slice().asReadOnlyBuffer();
+        this.decoded = false;
+    }
+
+    /**
+     * Builds a packet from a header and a read-only payload shared with
+     * another packet
+     */
+    private Packet(Header header, ByteBuffer payload) {
         this.header = header;
         this.payload = payload;
+        this.decoded = true;
     }
 
     /**
-     * Getters and Setters
+     * Takes a packet from the pool of the current thread
+     * The caller holds the only reference to it
+     *
+     * @param header The header, which goes back to its pool along with the
+     * packet
+     * @return The packet
+     */
+    public static Packet obtain(Header header) {
+        Packet packet = POOL.acquire();
+        packet.header = header;
+        packet.references = 1;
+        return packet;
+    }
+
+    /**
+     * Creates a packet for the pool
+     */
+    private static Packet newPooled() {
+        Packet packet = new Packet(null, (ByteBuffer)null);
+        packet.pooled = true;
+        return packet;
+    }
+
+    /**
+     * Adds a holder of the packet
+     *
+     * @return The packet itself
+     */
+    public Packet retain() {
+        if (this.pooled && REFERENCES.getAndIncrement(this) <= 0) {
+            throw new IllegalStateException("Packet retained after release");
+        }
+        return this;
+    }
+
+    /**
+     * Removes a holder of the packet
+     * The last one returns the packet and its header to the pool
+     */
+    public void release() {
+        if (!this.pooled) {
+            return;
+        }
+        int references = REFERENCES.decrementAndGet(this);
+        if (references == 0) {
+            Header header = this.header;
+            this.header = null;
+            this.buffer = null;
+            if (header != null) {
+                header.recycle();
+            }
+            POOL.release(this);
+        } else if (references < 0) {
+            throw new IllegalStateException("Packet released too often");
+        }
+    }
+
+    /**
+     * Getters
      */
     public Header getHeader() {
-        return this.header;
+        Header header = this.header;
+        if (header == null && !this.decoded) {
+            header = decodeHeader(this.buffer);
+            this.header = header;
+        }
+        return header;
     }
 
-    public void setHeader(Header header) {
-        this.header = header;
+    /**
+     * Returns the payload
+     *
+     * @return A read-only view of the payload, positioned at its start,
+     * null if the packet has none
+     */
+    public ByteBuffer getPayload() {
+        ByteBuffer payload = this.getPayloadBuffer();
+        return payload == null ? null : payload.duplicate();
     }
 
-    public byte[] getPayload() {
-        return this.payload;
+    /**
+     * Returns a packet with another header and the same payload
+     * The payload is never recycled, so it is shared even with a pooled
+     * packet
+     *
+     * @param header The header of the new packet
+     * @return The new packet
+     */
+    public Packet withHeader(Header header) {
+        return new Packet(header, this.getPayloadBuffer());
     }
 
-    public void setPayload(byte[] payload) {
-        this.payload = payload;
+    /**
+     * Returns a packet with the same header and another payload
+     * The header of a pooled packet goes back to its pool along with the
+     * packet, so the new packet gets a copy of it decoded from the frame
+     *
+     * @param payload The payload of the new packet, copied
+     * @return The new packet
+     */
+    public Packet withPayload(byte[] payload) {
+        Header header = this.getHeader();
+        if (this.pooled && header != null) {
+            header = decodeHeader(this.getBuffer());
+        }
+        return new Packet(header, payload);
+    }
+
+    /**
+     * Checks whether the packet carries an encoded frame
+     *
+     * @return Whether the encoded form is available without encoding
+     */
+    public boolean isEncoded() {
+        return this.buffer != null;
+    }
+
+    /**
+     * Returns the encoded frame, encoding the packet if needed
+     *
+     * @return A read only view of the frame, positioned at its start
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer buffer = this.buffer;
+        if (buffer == null) {
+            buffer = this.encode();
+            this.buffer = buffer;
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * Returns the length of the encoded frame
+     *
+     * @return The length in bytes
+     */
+    public int getLength() {
+        ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            return buffer.remaining();
+        }
+        int length = EtherType.LENGTH;
+        if (this.header != null) {
+            length += this.header.getLength();
+        }
+        if (this.payload != null) {
+            length += this.payload.remaining();
+        }
+        return length;
+    }
+
+    /**
+     * Returns the EtherType of an encoded frame
+     *
+     * @param buffer The encoded frame
+     *
+     * @return The EtherType
+     */
+    public static int getEtherType(ByteBuffer buffer) {
+        return buffer.getShort(buffer.position()) & 0xFFFF;
+    }
+
+    /**
+     * Returns the payload without copying the view
+     */
+    private ByteBuffer getPayloadBuffer() {
+        ByteBuffer payload = this.payload;
+        if (payload == null && !this.decoded) {
+            payload = decodePayload(this.buffer);
+            this.payload = payload;
+        }
+        return payload;
+    }
+
+    /**
+     * Encodes the object form
+     *
+     * @return The encoded frame
+     */
+    private ByteBuffer encode() {
+        ByteBuffer frame = ByteBuffer.allocate(this.getLength());
+        if (this.header == null) {
+            frame.putShort((short)EtherType.DATA);
+        } else {
+            frame.putShort((short)this.header.getEtherType());
+            this.header.encode(frame,
+                               this.payload == null ? 0
+                                                    : this.payload.remaining());
+        }
+        if (this.payload != null) {
+            frame.put(this.payload.duplicate());
+        }
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the length of the header of an encoded frame
+     *
+     * @param buffer The encoded frame
+     *
+     * @return The length in bytes
+     */
+    private static int getHeaderLength(ByteBuffer buffer) {
+        switch (getEtherType(buffer)) {
+        case EtherType.ARP:
+            return ArpHeader.LENGTH;
+        case EtherType.SEC_ARP:
+            return SecArpHeader.LENGTH;
+        case EtherType.IPV4:
+            return Ipv4Header.LENGTH;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Decodes the header of an encoded frame
+     *
+     * @param buffer The encoded frame
+     *
+     * @return The header, null if the frame has none
+     */
+    private static Header decodeHeader(ByteBuffer buffer) {
+        int offset = buffer.position() + EtherType.LENGTH;
+        switch (getEtherType(buffer)) {
+        case EtherType.ARP:
+            return ArpHeader.decode(buffer, offset);
+        case EtherType.SEC_ARP:
+            return SecArpHeader.decode(buffer, offset);
+        case EtherType.IPV4:
+            return Ipv4Header.decode(buffer, offset);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the payload of an encoded frame, without copying it
+     *
+     * @param buffer The encoded frame
+     *
+     * @return A read-only view of the payload, null if the frame has none
+     */
+    private static ByteBuffer decodePayload(ByteBuffer buffer) {
+        int offset = EtherType.LENGTH + getHeaderLength(buffer);
+        int length = buffer.remaining() - offset;
+        if (length <= 0) {
+            return null;
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(view.position() + offset);
+        return view.slice();
     }
 }
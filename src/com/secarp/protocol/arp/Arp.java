@@ -1,13 +1,19 @@
 package com.secarp.protocol.arp;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
-import com.secarp.common.Timer;
 import com.secarp.device.Node;
 import com.secarp.protocol.AddressResolutionProtocol;
 import com.secarp.protocol.Header;
 import com.secarp.protocol.Receivable;
 import com.secarp.protocol.Packet;
+import com.secarp.trace.TraceRecord;
+import com.secarp.trace.TraceRecorder;
 
 /**
  * Represents the ARP protocol stack
@@ -16,18 +22,35 @@ public class Arp extends AddressResolutionProtocol implements Receivable {
     //The timeout of an entry in seconds
     private static final int TIMEOUT = 60;
 
+    // Time, in milliseconds, to wait for a reply before sending the request
+    // again
+    private static final int REQUEST_RETRY_INTERVAL = 1000;
+
+    // Number of requests sent before giving up on a resolution, the same as
+    // mcast_solicit in Linux
+    private static final int MAX_REQUESTS = 3;
+
     // The ARP cache
     private ArpCache arpCache;
 
+    // The index of the ARP cache in the metrics
+    private int arpCacheMetrics;
+
     // The node associated with the protocol
     // Assuming one to one mapping with a particular node
     private Node node;
 
+    // Resolutions waiting for a reply, by the IP being resolved
+    // Shared by all the callers resolving the same IP
+    private Map<Ipv4Address, CompletableFuture<MacAddress>> pending;
+
     /**
      * Constructor function
      */
     public Arp() {
-        this.arpCache = new ArpCache(TIMEOUT);
+        this.arpCache = ArpCache.fromSystemProperties(TIMEOUT);
+        this.arpCacheMetrics = this.metrics.addCache("Cache", this.arpCache);
+        this.pending = new HashMap<Ipv4Address, CompletableFuture<MacAddress>>();
     }
 
     /**
@@ -41,23 +64,103 @@ public class Arp extends AddressResolutionProtocol implements Receivable {
      * @{inheritDocs}
      */
     @Override
-    public MacAddress getMacAddress(Ipv4Address ipv4Address) {
-        MacAddress address;
-
-        while((address = this.arpCache.lookup(ipv4Address)) == null) {
-            Packet packet = createRequestPacket(this.node.getMacAddress(),
-                                                this.node.getIpv4Address(),
-                                                ipv4Address
-                                                );
-
-            this.node.sendPacket(packet,
-                                 MacAddress.getBroadcast()
-                                 );
-            // Waiting before looking up in cache
-            Timer.sleep(1000);
+    public Node getNode() {
+        return this.node;
+    }
+
+    /**
+     * @{inheritDocs}
+     * Broadcasts a request every retry interval, and completes as soon as a
+     * reply arrives, or with null once the requests run out
+     * Callers resolving the same IP share one outstanding request
+     */
+    @Override
+    public CompletableFuture<MacAddress> getMacAddressAsync(
+        Ipv4Address ipv4Address) {
+        MacAddress address =
+            ArpCache.toMacAddress(this.arpCache.lookup(ipv4Address.toInt()));
+        this.metrics.cacheLookup(this.arpCacheMetrics, address != null);
+        if (address != null) {
+            return CompletableFuture.completedFuture(address);
         }
 
-        return address;
+        CompletableFuture<MacAddress> future;
+        boolean outstanding;
+        synchronized (this.pending) {
+            future = this.pending.get(ipv4Address);
+            outstanding = future != null;
+            if (!outstanding) {
+                future = new CompletableFuture<MacAddress>();
+                this.pending.put(ipv4Address, future);
+            }
+        }
+        if (!outstanding) {
+            this.measureResolution(future);
+            this.sendRequest(ipv4Address, future, MAX_REQUESTS);
+        }
+        // Callers get a future of their own, so that none of them can
+        // complete the shared one
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * Broadcasts a request and schedules the next one, till the resolution
+     * completes
+     *
+     * @param ipv4Address Ip address which needs to be resolved
+     * @param future The resolution
+     * @param requests Number of requests left to send
+     */
+    private void sendRequest(Ipv4Address ipv4Address,
+                             CompletableFuture<MacAddress> future,
+                             int requests) {
+        if (future.isDone()) {
+            return;
+        }
+        // The reply may have been cached before the resolution was waiting
+        MacAddress address =
+            ArpCache.toMacAddress(this.arpCache.lookup(ipv4Address.toInt()));
+        if (address != null) {
+            this.completePending(ipv4Address, address);
+            return;
+        }
+        if (requests == 0) {
+            // No reply to any of the requests
+            this.completePending(ipv4Address, null);
+            return;
+        }
+
+        Packet packet = createRequestPacket(this.node.getMacAddress(),
+                                            this.node.getIpv4Address(),
+                                            ipv4Address
+                                            );
+
+        this.node.sendPacket(packet,
+                             MacAddress.getBroadcast()
+                             );
+        packet.release();
+        this.node.getScheduler().schedule(
+            this.node,
+            REQUEST_RETRY_INTERVAL,
+            () -> this.sendRequest(ipv4Address, future, requests - 1)
+            );
+    }
+
+    /**
+     * Completes the resolution waiting for an IP, if any
+     *
+     * @param ipv4Address The resolved IP
+     * @param macAddress The MAC it resolved to
+     */
+    private void completePending(Ipv4Address ipv4Address,
+                                 MacAddress macAddress) {
+        CompletableFuture<MacAddress> future;
+        synchronized (this.pending) {
+            future = this.pending.remove(ipv4Address);
+        }
+        if (future != null) {
+            future.complete(macAddress);
+        }
     }
 
     /**
@@ -78,11 +181,22 @@ public class Arp extends AddressResolutionProtocol implements Receivable {
         // Checking if packet is an ARP reply packet
         if (header.getArpType() == ArpType.REPLY) {
             // Add entry in cache
-            this.arpCache.put(header.getSenderIp(),
-                              header.getSenderMac()
+            this.arpCache.put(header.getSenderIp().toInt(),
+                              header.getSenderMac().toLong()
                               );
             // Logging
-            this.node.getLogger().logArpCache();
+            this.node.getLogger().logArpCache(header.getSenderIp(),
+                                              header.getSenderMac());
+            TraceRecorder traceRecorder = this.node.getTraceRecorder();
+            if (traceRecorder != null) {
+                traceRecorder.recordCachePut(
+                    this.node.getScheduler().getCurrentTimeInMillis(),
+                    this.node.getId(),
+                    TraceRecord.ARP_CACHE,
+                    header.getSenderIp(),
+                    header.getSenderMac());
+            }
+            this.completePending(header.getSenderIp(), header.getSenderMac());
         } else if (header.getArpType() == ArpType.REQUEST) {
             // Check if target ip matches node's ip or not
             if (this.node.getIpv4Address().equals(header.getReceiverIp())) {
@@ -95,6 +209,7 @@ public class Arp extends AddressResolutionProtocol implements Receivable {
                 this.node.sendPacket(reply,
                                      header.getSenderMac()
                                      );
+                reply.release();
             }
         }
     }
@@ -116,21 +231,21 @@ public class Arp extends AddressResolutionProtocol implements Receivable {
      * @param senderIp The IP of the sender node
      * @param receiverIp The IP of the receiver node
      *
-     * @return The ARP Packet
+     * @return The ARP Packet, from the pool
      */
     public static Packet createRequestPacket(MacAddress senderMac,
                                              Ipv4Address senderIp,
                                              Ipv4Address receiverIp
                                              ) {
-        MacAddress receiverMac = new MacAddress("00:00:00:00:00:00");
-        Header arpHeader = new ArpHeader(senderMac,
-                                         senderIp,
-                                         receiverMac,
-                                         receiverIp,
-                                         ArpType.REQUEST
-                                         );
-
-        Packet arpPacket = new Packet(arpHeader);
+        MacAddress receiverMac = MacAddress.getZero();
+        Header arpHeader = ArpHeader.obtain(senderMac,
+                                            senderIp,
+                                            receiverMac,
+                                            receiverIp,
+                                            ArpType.REQUEST
+                                            );
+
+        Packet arpPacket = Packet.obtain(arpHeader);
         return arpPacket;
     }
 
@@ -142,21 +257,21 @@ public class Arp extends AddressResolutionProtocol implements Receivable {
      * @param receiverMac The MAC of the receiver node
      * @param receiverIp The IP of the receiver node
      *
-     * @return The ARP Packet
+     * @return The ARP Packet, from the pool
      */
     public static Packet createReplyPacket(MacAddress senderMac,
                                            Ipv4Address senderIp,
                                            MacAddress receiverMac,
                                            Ipv4Address receiverIp
                                            ) {
-        Header arpHeader = new ArpHeader(senderMac,
-                                         senderIp,
-                                         receiverMac,
-                                         receiverIp,
-                                         ArpType.REPLY
-                                         );
-
-        Packet arpPacket = new Packet(arpHeader);
+        Header arpHeader = ArpHeader.obtain(senderMac,
+                                            senderIp,
+                                            receiverMac,
+                                            receiverIp,
+                                            ArpType.REPLY
+                                            );
+
+        Packet arpPacket = Packet.obtain(arpHeader);
         return arpPacket;
     }
 }
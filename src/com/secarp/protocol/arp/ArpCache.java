@@ -1,49 +1,115 @@
 package com.secarp.protocol.arp;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
-import com.secarp.common.Timer;
 
 /**
- * Implements the standard ARP cache
+ * An abstraction for the standard ARP cache
  * It maps Ipv4Address to MacAddress
  * The timeout for any entry is 60 seconds(the default in Linux)
  */
-public class ArpCache {
-    // IP MAC hash map
-    private HashMap<Ipv4Address, MacAddress> ipMacMap;
+public abstract class ArpCache {
+    // The system property selecting the cache implementation
+    public static final String ARP_CACHE_PROPERTY = "secarp.arpcache";
 
-    // IP timeout hash map
-    private HashMap<Ipv4Address, Integer> ipTimeoutMap;
+    // Returned by the packed lookup when no valid entry exists
+    public static final long NOT_FOUND = -1L;
 
     // The timeout of an entry in seconds
-    private int timeout;
+    protected int timeout;
+
+    // The number of lookups that found an expired entry
+    private final LongAdder expiredLookups = new LongAdder();
 
     /**
      * Constructor function
+     *
+     * @param timeout The timeout of an entry in seconds
      */
     public ArpCache(int timeout) {
-        this.ipMacMap = new HashMap<Ipv4Address, MacAddress>();
-        this.ipTimeoutMap = new HashMap<Ipv4Address, Integer>();
         this.timeout = timeout;
     }
 
+    /**
+     * Creates a cache by name
+     *
+     * @param name One of "concurrent", "hashmap" or "open"
+     * @param timeout The timeout of an entry in seconds
+     *
+     * @return A new, empty cache
+     */
+    public static ArpCache create(String name, int timeout) {
+        switch (name) {
+        case "concurrent":
+            return new ConcurrentArpCache(timeout);
+        case "hashmap":
+            return new HashMapArpCache(timeout);
+        case "open":
+            return new OpenAddressingArpCache(timeout);
+        default:
+            throw new IllegalArgumentException("Unknown ARP cache: " + name);
+        }
+    }
+
+    /**
+     * Creates the cache selected by the secarp.arpcache system property
+     * Defaults to the concurrent cache, the only one safe under every
+     * scheduler
+     *
+     * @param timeout The timeout of an entry in seconds
+     *
+     * @return A new, empty cache
+     */
+    public static ArpCache fromSystemProperties(int timeout) {
+        return create(System.getProperty(ARP_CACHE_PROPERTY, "concurrent"),
+                      timeout);
+    }
+
+    /**
+     * Unpacks the result of a packed lookup
+     *
+     * @param macAddress The packed MAC address, or NOT_FOUND
+     *
+     * @return The MAC address, null for NOT_FOUND
+     */
+    public static MacAddress toMacAddress(long macAddress) {
+        return macAddress == NOT_FOUND ? null : MacAddress.valueOf(macAddress);
+    }
+
+    /**
+     * Getter for timeout
+     */
+    public int getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Returns the number of lookups that found an expired entry
+     *
+     * @return The number of lookups
+     */
+    public long getExpiredLookups() {
+        return this.expiredLookups.sum();
+    }
+
+    /**
+     * Counts a lookup that found an expired entry
+     */
+    protected void expiredLookup() {
+        this.expiredLookups.increment();
+    }
+
     /**
      * Add entry in cache
      *
      * @param ipv4Address The ipv4 address
      * @param macAddress The Mac address
      */
-    public synchronized void put(Ipv4Address ipv4Address,
-                                 MacAddress macAddress) {
-        this.ipMacMap.put(ipv4Address,
-                          macAddress);
-        this.ipTimeoutMap.put(ipv4Address,
-                              Timer.getCurrentTime());
-    }
+    public abstract void put(Ipv4Address ipv4Address,
+                             MacAddress macAddress);
 
     /**
      * Lookup an entry in cache
@@ -52,17 +118,31 @@ public class ArpCache {
      *
      * @return The MAC address found in cache, null otherwise
      */
-    public MacAddress lookup(Ipv4Address ipv4Address) {
-        if (!this.ipTimeoutMap.containsKey(ipv4Address)) {
-            return null;
-        }
-        if ((this.ipTimeoutMap.get(ipv4Address) + this.timeout) <
-            Timer.getCurrentTime()
-            ) {
-            // Entry was present but has expired
-            return null;
-        }
-        return this.ipMacMap.get(ipv4Address);
+    public abstract MacAddress lookup(Ipv4Address ipv4Address);
+
+    /**
+     * Add entry in cache by packed addresses
+     * Caches keeping packed addresses override this to skip the objects
+     *
+     * @param ipv4Address The packed ipv4 address
+     * @param macAddress The packed Mac address
+     */
+    public void put(int ipv4Address, long macAddress) {
+        this.put(Ipv4Address.valueOf(ipv4Address),
+                 MacAddress.valueOf(macAddress));
+    }
+
+    /**
+     * Lookup an entry in cache by packed address
+     * Caches keeping packed addresses override this to skip the objects
+     *
+     * @param ipv4Address The packed ipv4 address
+     *
+     * @return The packed MAC address found in cache, NOT_FOUND otherwise
+     */
+    public long lookup(int ipv4Address) {
+        MacAddress macAddress = this.lookup(Ipv4Address.valueOf(ipv4Address));
+        return macAddress == null ? NOT_FOUND : macAddress.toLong();
     }
 
     /**
@@ -70,19 +150,5 @@ public class ArpCache {
      *
      * @return A map of valid IP and Mac pairs
      */
-    public Map<Ipv4Address, MacAddress> getMap() {
-        Map<Ipv4Address, MacAddress> map = new HashMap<Ipv4Address,
-            MacAddress>();
-
-        for (Ipv4Address ipv4Address : this.ipMacMap.keySet()) {
-            if ((this.ipTimeoutMap.get(ipv4Address) + this.timeout) >=
-                Timer.getCurrentTime()
-                ) {
-                // Valid entry
-                map.put(ipv4Address, this.ipMacMap.get(ipv4Address));
-            }
-        }
-
-        return map;
-    }
+    public abstract Map<Ipv4Address, MacAddress> getMap();
 }
@@ -1,13 +1,54 @@
 package com.secarp.protocol.arp;
 
+import java.nio.ByteBuffer;
+
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
+import com.secarp.common.ObjectPool;
+import com.secarp.protocol.EtherType;
 import com.secarp.protocol.Header;
 
 /**
  * The ARP header
+ * On the wire it is the 28 byte RFC 826 packet for Ethernet and IPv4:
+ *
+ *  0  hardware type (1, Ethernet)   2  protocol type (0x0800, IPv4)
+ *  4  hardware address length (6)   5  protocol address length (4)
+ *  6  operation (1 request, 2 reply)
+ *  8  sender hardware address      14  sender protocol address
+ * 18  target hardware address      24  target protocol address
  */
 public class ArpHeader extends Header {
+    // The length of the wire form in bytes
+    public static final int LENGTH = 28;
+
+    // Offsets of the fields in the wire form
+    static final int HARDWARE_TYPE_OFFSET = 0;
+    static final int PROTOCOL_TYPE_OFFSET = 2;
+    static final int HARDWARE_LENGTH_OFFSET = 4;
+    static final int PROTOCOL_LENGTH_OFFSET = 5;
+    static final int OPERATION_OFFSET = 6;
+    static final int SENDER_MAC_OFFSET = 8;
+    static final int SENDER_IP_OFFSET = 14;
+    static final int RECEIVER_MAC_OFFSET = 18;
+    static final int RECEIVER_IP_OFFSET = 24;
+
+    // Field values for Ethernet and IPv4
+    static final int HARDWARE_TYPE_ETHERNET = 1;
+    static final int PROTOCOL_TYPE_IPV4 = 0x0800;
+
+    // Operation codes
+    static final int OPERATION_REQUEST = 1;
+    static final int OPERATION_REPLY = 2;
+
+    // The free pooled headers
+    private static final ObjectPool<ArpHeader> POOL =
+        new ObjectPool<ArpHeader>(() -> {
+                ArpHeader header = new ArpHeader(null, null, null, null, null);
+                header.pooled = true;
+                return header;
+            });
+
     // Sender Hardware Address
     private MacAddress senderMac;
 
@@ -23,6 +64,9 @@ public class ArpHeader extends Header {
     // Packet type
     private ArpType arpType;
 
+    // Whether the header belongs to the pool
+    private boolean pooled;
+
     /**
      * Constructor function
      */
@@ -39,6 +83,41 @@ public class ArpHeader extends Header {
         this.arpType = arpType;
     }
 
+    /**
+     * Takes a header from the pool of the current thread
+     * It goes back once the pooled packet holding it is recycled
+     *
+     * @return The header
+     */
+    public static ArpHeader obtain(MacAddress senderMac,
+                                   Ipv4Address senderIp,
+                                   MacAddress receiverMac,
+                                   Ipv4Address receiverIp,
+                                   ArpType arpType
+                                   ) {
+        ArpHeader header = POOL.acquire();
+        header.senderMac = senderMac;
+        header.senderIp = senderIp;
+        header.receiverMac = receiverMac;
+        header.receiverIp = receiverIp;
+        header.arpType = arpType;
+        return header;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recycle() {
+        if (this.pooled) {
+            this.senderMac = null;
+            this.senderIp = null;
+            this.receiverMac = null;
+            this.receiverIp = null;
+            POOL.release(this);
+        }
+    }
+
     /**
      * Getter functions
      */
@@ -66,8 +145,100 @@ public class ArpHeader extends Header {
      * @{inheritDoc}
      */
     @Override
-    public byte[] getBytes() {
-        return null; // TODO
+    public int getEtherType() {
+        return EtherType.ARP;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public int getLength() {
+        return LENGTH;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void encode(ByteBuffer buffer) {
+        encode(buffer,
+               this.senderMac,
+               this.senderIp,
+               this.receiverMac,
+               this.receiverIp,
+               this.arpType
+               );
+    }
+
+    /**
+     * Writes the 28 byte ARP packet at the position of a buffer and advances
+     * the position past it
+     *
+     * @param buffer The buffer
+     * @param senderMac Sender Hardware Address
+     * @param senderIp Sender Protocol Address
+     * @param receiverMac Receiver Hardware Address
+     * @param receiverIp Receiver Protocol Address
+     * @param arpType Packet type
+     */
+    public static void encode(ByteBuffer buffer,
+                              MacAddress senderMac,
+                              Ipv4Address senderIp,
+                              MacAddress receiverMac,
+                              Ipv4Address receiverIp,
+                              ArpType arpType
+                              ) {
+        buffer.putShort((short)HARDWARE_TYPE_ETHERNET);
+        buffer.putShort((short)PROTOCOL_TYPE_IPV4);
+        buffer.put((byte)MacAddress.LENGTH);
+        buffer.put((byte)Ipv4Address.LENGTH);
+        buffer.putShort((short)(arpType == ArpType.REQUEST ?
+                                OPERATION_REQUEST : OPERATION_REPLY));
+        putMac(buffer, senderMac.toLong());
+        buffer.putInt(senderIp.toInt());
+        putMac(buffer, receiverMac.toLong());
+        buffer.putInt(receiverIp.toInt());
+    }
+
+    /**
+     * Decodes the wire form of a header
+     *
+     * @param buffer The buffer holding the wire form
+     * @param offset The index at which the header starts
+     *
+     * @return The decoded header, null if the header is not valid
+     */
+    public static ArpHeader decode(ByteBuffer buffer, int offset) {
+        ArpHeaderView view = new ArpHeaderView().wrap(buffer, offset);
+        if (!view.isValid()) {
+            return null;
+        }
+        return (ArpHeader)view.toHeader();
+    }
+
+    /**
+     * Writes a packed MAC address as 6 bytes
+     *
+     * @param buffer The buffer
+     * @param address The packed address
+     */
+    static void putMac(ByteBuffer buffer, long address) {
+        buffer.putShort((short)(address >>> 32));
+        buffer.putInt((int)address);
+    }
+
+    /**
+     * Reads a packed MAC address from 6 bytes
+     *
+     * @param buffer The buffer
+     * @param index The index of the first byte
+     *
+     * @return The packed address
+     */
+    static long getMac(ByteBuffer buffer, int index) {
+        return ((buffer.getShort(index) & 0xFFFFL) << 32) |
+            (buffer.getInt(index + 2) & 0xFFFFFFFFL);
     }
 }
 
@@ -0,0 +1,108 @@
+package com.secarp.protocol.arp;
+
+import java.nio.ByteBuffer;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.protocol.Header;
+
+/**
+ * A flyweight over the wire form of an ARP header
+ * Fields are read in place from the buffer, as packed addresses, without
+ * building any address objects. A view can be re-pointed at another header
+ * with wrap(), so a single instance serves any number of packets.
+ */
+public class ArpHeaderView {
+    // The buffer holding the wire form
+    protected ByteBuffer buffer;
+
+    // The index at which the header starts
+    protected int offset;
+
+    /**
+     * Points the view at a header
+     *
+     * @param buffer The buffer holding the wire form
+     * @param offset The index at which the header starts
+     *
+     * @return The view itself
+     */
+    public ArpHeaderView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Checks whether the header describes Ethernet and IPv4 addresses, and
+     * is a request or a reply
+     *
+     * @return Whether the header can be read by this view
+     */
+    public boolean isValid() {
+        return (this.buffer.getShort(
+                    this.offset + ArpHeader.HARDWARE_TYPE_OFFSET) ==
+                ArpHeader.HARDWARE_TYPE_ETHERNET) &&
+            (this.buffer.getShort(
+                this.offset + ArpHeader.PROTOCOL_TYPE_OFFSET) ==
+             ArpHeader.PROTOCOL_TYPE_IPV4) &&
+            (this.buffer.get(
+                this.offset + ArpHeader.HARDWARE_LENGTH_OFFSET) ==
+             MacAddress.LENGTH) &&
+            (this.buffer.get(
+                this.offset + ArpHeader.PROTOCOL_LENGTH_OFFSET) ==
+             Ipv4Address.LENGTH) &&
+            (this.getArpType() != null);
+    }
+
+    /**
+     * Getter functions
+     * Addresses are returned packed, see MacAddress.toLong() and
+     * Ipv4Address.toInt()
+     * The ARP type is null for an operation other than request and reply
+     */
+    public ArpType getArpType() {
+        int operation =
+            this.buffer.getShort(this.offset + ArpHeader.OPERATION_OFFSET);
+        if (operation == ArpHeader.OPERATION_REQUEST) {
+            return ArpType.REQUEST;
+        }
+        if (operation == ArpHeader.OPERATION_REPLY) {
+            return ArpType.REPLY;
+        }
+        // Unknown operation
+        return null;
+    }
+
+    public long getSenderMac() {
+        return ArpHeader.getMac(this.buffer,
+                                this.offset + ArpHeader.SENDER_MAC_OFFSET);
+    }
+
+    public int getSenderIp() {
+        return this.buffer.getInt(this.offset + ArpHeader.SENDER_IP_OFFSET);
+    }
+
+    public long getReceiverMac() {
+        return ArpHeader.getMac(this.buffer,
+                                this.offset + ArpHeader.RECEIVER_MAC_OFFSET);
+    }
+
+    public int getReceiverIp() {
+        return this.buffer.getInt(this.offset + ArpHeader.RECEIVER_IP_OFFSET);
+    }
+
+    /**
+     * Builds the object form of the viewed header
+     *
+     * @return The header
+     */
+    public Header toHeader() {
+        return new ArpHeader(MacAddress.valueOf(this.getSenderMac()),
+                             Ipv4Address.valueOf(this.getSenderIp()),
+                             MacAddress.valueOf(this.getReceiverMac()),
+                             Ipv4Address.valueOf(this.getReceiverIp()),
+                             this.getArpType()
+                             );
+    }
+}
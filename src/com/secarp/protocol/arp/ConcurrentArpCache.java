@@ -0,0 +1,180 @@
+package com.secarp.protocol.arp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.common.Timer;
+
+/**
+ * Implements the ARP cache for concurrent use
+ *
+ * Each IP maps to a chain of immutable versions, newest first, stamped from
+ * a global version clock.
+ * - lookup() reads the newest version and never locks or waits
+ * - put() only locks the hash bin of its IP, so writes to different IPs do
+ *   not contend
+ * - getMap() picks, for every IP, the newest version not newer than the
+ *   clock at its start, which gives a point in time snapshot without
+ *   stopping the writers
+ *
+ * A write takes effect when it draws its version. Until then it is pending,
+ * lookups skip it and snapshots wait for it. Older versions are kept only
+ * while a running snapshot may still need them.
+ */
+public class ConcurrentArpCache extends ArpCache {
+    // Version of a write that has not drawn its version yet
+    private static final long PENDING = Long.MAX_VALUE;
+
+    // The newest version of each IP
+    private ConcurrentHashMap<Ipv4Address, Version> versions;
+
+    // The version clock
+    private AtomicLong clock;
+
+    // The versions running snapshots started at, with their counts
+    private ConcurrentSkipListMap<Long, Integer> snapshots;
+
+    /**
+     * A single version of a cache entry
+     */
+    private static class Version {
+        // The Mac address
+        final MacAddress macAddress;
+
+        // The expiration time in seconds
+        final int expirationTime;
+
+        // The version, PENDING till the write takes effect
+        volatile long version;
+
+        // The previous version, null once no snapshot needs it
+        volatile Version previous;
+
+        Version(MacAddress macAddress, int expirationTime, Version previous) {
+            this.macAddress = macAddress;
+            this.expirationTime = expirationTime;
+            this.version = PENDING;
+            this.previous = previous;
+        }
+
+        /**
+         * Waits till the write creating this version has taken effect
+         *
+         * @return The version
+         */
+        long awaitVersion() {
+            long version;
+            while ((version = this.version) == PENDING) {
+                Thread.yield();
+            }
+            return version;
+        }
+    }
+
+    /**
+     * Constructor function
+     */
+    public ConcurrentArpCache(int timeout) {
+        super(timeout);
+        this.versions = new ConcurrentHashMap<Ipv4Address, Version>();
+        this.clock = new AtomicLong();
+        this.snapshots = new ConcurrentSkipListMap<Long, Integer>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(Ipv4Address ipv4Address,
+                    MacAddress macAddress) {
+        int expirationTime = Timer.getCurrentTime() + this.timeout;
+        Version version = this.versions.compute(ipv4Address, (ip, newest) -> {
+                if (newest != null) {
+                    // Versions of an IP are drawn in the order of the chain
+                    newest.awaitVersion();
+                }
+                return new Version(macAddress, expirationTime, newest);
+            });
+        version.version = this.clock.incrementAndGet();
+        this.prune(version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MacAddress lookup(Ipv4Address ipv4Address) {
+        Version version = this.versions.get(ipv4Address);
+        if (version != null && version.version == PENDING) {
+            // The write has not taken effect yet
+            version = version.previous;
+        }
+        if (version == null) {
+            return null;
+        }
+        if (version.expirationTime < Timer.getCurrentTime()) {
+            // Entry was present but has expired
+            this.expiredLookup();
+            return null;
+        }
+        return version.macAddress;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The map is a snapshot of the cache at the time of the call
+     */
+    @Override
+    public Map<Ipv4Address, MacAddress> getMap() {
+        // Registering before reading the clock, so that no version the
+        // snapshot needs gets pruned
+        long registered = this.clock.get();
+        this.snapshots.merge(registered, 1, Integer::sum);
+        try {
+            long snapshotVersion = this.clock.get();
+            int currentTime = Timer.getCurrentTime();
+            Map<Ipv4Address, MacAddress> map = new HashMap<Ipv4Address,
+                MacAddress>();
+
+            for (Map.Entry<Ipv4Address, Version> entry :
+                     this.versions.entrySet()) {
+                Version version = entry.getValue();
+                while (version != null &&
+                       version.awaitVersion() > snapshotVersion) {
+                    version = version.previous;
+                }
+                if (version != null && version.expirationTime >= currentTime) {
+                    // Valid entry
+                    map.put(entry.getKey(), version.macAddress);
+                }
+            }
+
+            return map;
+        } finally {
+            this.snapshots.computeIfPresent(registered, (key, count) -> {
+                    return count == 1 ? null : count - 1;
+                });
+        }
+    }
+
+    /**
+     * Cuts off the versions behind a new one that no running snapshot needs
+     *
+     * @param version The newly written version
+     */
+    private void prune(Version version) {
+        Map.Entry<Long, Integer> oldest = this.snapshots.firstEntry();
+        long oldestSnapshot = oldest == null ? PENDING : oldest.getKey();
+        while (version != null && version.version > oldestSnapshot) {
+            version = version.previous;
+        }
+        if (version != null) {
+            version.previous = null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.secarp.protocol.arp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.common.Timer;
+
+/**
+ * Implements the standard ARP cache on two hash maps
+ */
+public class HashMapArpCache extends ArpCache {
+    // IP MAC hash map
+    private HashMap<Ipv4Address, MacAddress> ipMacMap;
+
+    // IP timeout hash map
+    private HashMap<Ipv4Address, Integer> ipTimeoutMap;
+
+    /**
+     * Constructor function
+     */
+    public HashMapArpCache(int timeout) {
+        super(timeout);
+        this.ipMacMap = new HashMap<Ipv4Address, MacAddress>();
+        this.ipTimeoutMap = new HashMap<Ipv4Address, Integer>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put(Ipv4Address ipv4Address,
+                                 MacAddress macAddress) {
+        this.ipMacMap.put(ipv4Address,
+                          macAddress);
+        this.ipTimeoutMap.put(ipv4Address,
+                              Timer.getCurrentTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MacAddress lookup(Ipv4Address ipv4Address) {
+        if (!this.ipTimeoutMap.containsKey(ipv4Address)) {
+            return null;
+        }
+        if ((this.ipTimeoutMap.get(ipv4Address) + this.timeout) <
+            Timer.getCurrentTime()
+            ) {
+            // Entry was present but has expired
+            this.expiredLookup();
+            return null;
+        }
+        return this.ipMacMap.get(ipv4Address);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Ipv4Address, MacAddress> getMap() {
+        Map<Ipv4Address, MacAddress> map = new HashMap<Ipv4Address,
+            MacAddress>();
+
+        for (Ipv4Address ipv4Address : this.ipMacMap.keySet()) {
+            if ((this.ipTimeoutMap.get(ipv4Address) + this.timeout) >=
+                Timer.getCurrentTime()
+                ) {
+                // Valid entry
+                map.put(ipv4Address, this.ipMacMap.get(ipv4Address));
+            }
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,265 @@
+package com.secarp.protocol.arp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.common.Timer;
+
+/**
+ * Implements the ARP cache on a single array with open addressing
+ * Every slot takes two longs of the array: the packed IP and the expiry time
+ * in the first, a used bit and the packed MAC in the second. A lookup follows
+ * one linear probe sequence and allocates nothing on the primitive path.
+ * Expired entries stay in place till the table is rebuilt.
+ *
+ * Writers take the write lock of a StampedLock. Lookups read optimistically
+ * without locking, and only take the read lock if a write ran meanwhile, so
+ * they never wait on each other. A probe reads the table reference once,
+ * and a replaced table is never written again.
+ */
+public class OpenAddressingArpCache extends ArpCache {
+    // Initial number of slots, a power of two
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Marks a used slot in the value word
+    private static final long USED = 1L << 63;
+
+    // The MAC bits of the value word
+    private static final long MAC_MASK = 0xFFFFFFFFFFFFL;
+
+    // Two words per slot, see the class comment
+    private long[] table;
+
+    // Number of slots minus one
+    private int mask;
+
+    // Number of used slots
+    private int size;
+
+    // Guards the table, see the class comment
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Constructor function
+     */
+    public OpenAddressingArpCache(int timeout) {
+        super(timeout);
+        this.table = new long[2 * INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+        this.size = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(Ipv4Address ipv4Address,
+                    MacAddress macAddress) {
+        this.put(ipv4Address.toInt(), macAddress.toLong());
+    }
+
+    /**
+     * Add entry in cache
+     *
+     * @param ipv4Address The packed ipv4 address
+     * @param macAddress The packed Mac address
+     */
+    @Override
+    public void put(int ipv4Address, long macAddress) {
+        int expirationTime = Timer.getCurrentTime() + this.timeout;
+        long stamp = this.lock.writeLock();
+        try {
+            // Keeping the load factor under 3/4
+            if (4 * (this.size + 1) > 3 * (this.mask + 1)) {
+                this.rebuild();
+            }
+            int slot = findSlot(this.table, ipv4Address);
+            if (this.table[2 * slot + 1] == 0) {
+                this.size++;
+            }
+            this.table[2 * slot] = pack(ipv4Address, expirationTime);
+            this.table[2 * slot + 1] = USED | (macAddress & MAC_MASK);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MacAddress lookup(Ipv4Address ipv4Address) {
+        long macAddress = this.lookup(ipv4Address.toInt());
+        if (macAddress == NOT_FOUND) {
+            return null;
+        }
+        return MacAddress.valueOf(macAddress);
+    }
+
+    /**
+     * Lookup an entry in cache without allocating
+     *
+     * @param ipv4Address The packed ipv4 address
+     *
+     * @return The packed MAC address found in cache, NOT_FOUND otherwise
+     */
+    @Override
+    public long lookup(int ipv4Address) {
+        long key = 0;
+        long value = 0;
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            long[] table = this.table;
+            int slot = findSlot(table, ipv4Address);
+            key = table[2 * slot];
+            value = table[2 * slot + 1];
+        }
+        if (!this.lock.validate(stamp)) {
+            // A write ran meanwhile, reading again under the lock
+            stamp = this.lock.readLock();
+            try {
+                int slot = findSlot(this.table, ipv4Address);
+                key = this.table[2 * slot];
+                value = this.table[2 * slot + 1];
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        if (value == 0) {
+            return NOT_FOUND;
+        }
+        if ((int)key < Timer.getCurrentTime()) {
+            // Entry was present but has expired
+            this.expiredLookup();
+            return NOT_FOUND;
+        }
+        return value & MAC_MASK;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Ipv4Address, MacAddress> getMap() {
+        Map<Ipv4Address, MacAddress> map = new HashMap<Ipv4Address,
+            MacAddress>();
+
+        int currentTime = Timer.getCurrentTime();
+        long stamp = this.lock.readLock();
+        try {
+            for (int slot = 0; slot <= this.mask; slot++) {
+                long key = this.table[2 * slot];
+                long value = this.table[2 * slot + 1];
+                if (value != 0 && (int)key >= currentTime) {
+                    // Valid entry
+                    map.put(Ipv4Address.valueOf((int)(key >>> 32)),
+                            MacAddress.valueOf(value & MAC_MASK));
+                }
+            }
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+
+        return map;
+    }
+
+    /**
+     * Returns the number of used slots, including expired entries
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        long stamp = this.lock.readLock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Finds the slot holding an IP, or the empty slot ending its probe
+     * sequence
+     *
+     * Gives up after one pass over the table, which only an optimistic read
+     * racing a write can see full
+     *
+     * @param table The table
+     * @param ipv4Address The packed ipv4 address
+     *
+     * @return The index of the slot
+     */
+    private static int findSlot(long[] table, int ipv4Address) {
+        int mask = table.length / 2 - 1;
+        int slot = hash(ipv4Address) & mask;
+        for (int probes = 0; probes < mask; probes++) {
+            if (table[2 * slot + 1] == 0 ||
+                (int)(table[2 * slot] >>> 32) == ipv4Address) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Rehashes all valid entries, dropping the expired ones
+     * The table doubles if at least half of it is still valid afterwards
+     */
+    private void rebuild() {
+        long[] oldTable = this.table;
+        int currentTime = Timer.getCurrentTime();
+
+        int valid = 0;
+        for (int slot = 0; 2 * slot < oldTable.length; slot++) {
+            if (oldTable[2 * slot + 1] != 0 &&
+                (int)oldTable[2 * slot] >= currentTime) {
+                valid++;
+            }
+        }
+        int capacity = oldTable.length / 2;
+        if (2 * (valid + 1) > capacity) {
+            capacity *= 2;
+        }
+
+        this.table = new long[2 * capacity];
+        this.mask = capacity - 1;
+        this.size = valid;
+        for (int slot = 0; 2 * slot < oldTable.length; slot++) {
+            long key = oldTable[2 * slot];
+            long value = oldTable[2 * slot + 1];
+            if (value != 0 && (int)key >= currentTime) {
+                int newSlot = findSlot(this.table, (int)(key >>> 32));
+                this.table[2 * newSlot] = key;
+                this.table[2 * newSlot + 1] = value;
+            }
+        }
+    }
+
+    /**
+     * Packs an IP and an expiration time into the key word of a slot
+     *
+     * @param ipv4Address The packed ipv4 address
+     * @param expirationTime The expiration time in seconds
+     *
+     * @return The key word
+     */
+    private static long pack(int ipv4Address, int expirationTime) {
+        return ((long)ipv4Address << 32) | (expirationTime & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Spreads the bits of an IP, consecutive addresses are common
+     *
+     * @param ipv4Address The packed ipv4 address
+     *
+     * @return The hash
+     */
+    private static int hash(int ipv4Address) {
+        int hash = ipv4Address * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,134 @@
+package com.secarp.protocol.ip;
+
+import java.nio.ByteBuffer;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.protocol.EtherType;
+import com.secarp.protocol.Header;
+
+/**
+ * The IPv4 header of a packet routed between broadcast domains
+ * On the wire it is the 20 byte RFC 791 header without options. Only the
+ * time to live and the addresses are used. The total length counts the
+ * payload, the other fields are written as constants, and both are ignored
+ * when read:
+ *
+ *  0  version and header length (0x45)   1  type of service
+ *  2  total length                       4  identification
+ *  6  flags and fragment offset          8  time to live
+ *  9  protocol                          10  header checksum
+ * 12  source address                    16  destination address
+ */
+public class Ipv4Header extends Header {
+    // The length of the wire form in bytes
+    public static final int LENGTH = 20;
+
+    // The time to live of a new packet, the default of Linux
+    public static final int DEFAULT_TTL = 64;
+
+    // Offsets of the fields in the wire form
+    static final int TTL_OFFSET = 8;
+    static final int SOURCE_OFFSET = 12;
+    static final int DESTINATION_OFFSET = 16;
+
+    // Version 4, with a header of 5 words
+    static final int VERSION_AND_LENGTH = 0x45;
+
+    // Protocol number reserved for experimentation, RFC 3692
+    static final int PROTOCOL_EXPERIMENTAL = 253;
+
+    // Source address
+    private Ipv4Address source;
+
+    // Destination address
+    private Ipv4Address destination;
+
+    // Number of routers the packet may still go through
+    private int ttl;
+
+    /**
+     * Constructor function
+     */
+    public Ipv4Header(Ipv4Address source,
+                      Ipv4Address destination,
+                      int ttl
+                      ) {
+        this.source = source;
+        this.destination = destination;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Getter functions
+     */
+    public Ipv4Address getSource() {
+        return this.source;
+    }
+
+    public Ipv4Address getDestination() {
+        return this.destination;
+    }
+
+    public int getTtl() {
+        return this.ttl;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public int getEtherType() {
+        return EtherType.IPV4;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public int getLength() {
+        return LENGTH;
+    }
+
+    /**
+     * @{inheritDoc}
+     * Writes the header without any payload
+     */
+    @Override
+    public void encode(ByteBuffer buffer) {
+        this.encode(buffer, 0);
+    }
+
+    /**
+     * @{inheritDoc}
+     * The total length counts the header and the payload
+     */
+    @Override
+    public void encode(ByteBuffer buffer, int payloadLength) {
+        buffer.put((byte)VERSION_AND_LENGTH);
+        buffer.put((byte)0);
+        buffer.putShort((short)(LENGTH + payloadLength));
+        buffer.putShort((short)0);
+        buffer.putShort((short)0);
+        buffer.put((byte)this.ttl);
+        buffer.put((byte)PROTOCOL_EXPERIMENTAL);
+        buffer.putShort((short)0);
+        buffer.putInt(this.source.toInt());
+        buffer.putInt(this.destination.toInt());
+    }
+
+    /**
+     * Decodes the wire form of a header
+     *
+     * @param buffer The buffer holding the wire form
+     * @param offset The index at which the header starts
+     *
+     * @return The decoded header
+     */
+    public static Ipv4Header decode(ByteBuffer buffer, int offset) {
+        return new Ipv4Header(
+            Ipv4Address.valueOf(buffer.getInt(offset + SOURCE_OFFSET)),
+            Ipv4Address.valueOf(buffer.getInt(offset + DESTINATION_OFFSET)),
+            buffer.get(offset + TTL_OFFSET) & 0xFF
+            );
+    }
+}
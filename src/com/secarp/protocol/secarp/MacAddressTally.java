@@ -0,0 +1,219 @@
+package com.secarp.protocol.secarp;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.secarp.address.MacAddress;
+
+/**
+ * Counts the replies of each distinct MAC to a request
+ * The MACs are numbered in the order they first reply. The count of each
+ * number lives in a chunk of counters that never moves once created, and an
+ * open addressing index maps a MAC to its number. Counting a MAC already
+ * seen only reads the index and increments its counter, so it neither locks
+ * nor allocates. Adding a new MAC, and growing the index, happens under the
+ * lock of the tally.
+ *
+ * The leader, the MAC with the highest count, is kept in a single word with
+ * its count and raised by every increment that passes it. Of MACs with the
+ * same count, the one reaching it first leads.
+ */
+class MacAddressTally {
+    // Number of MACs per chunk, a power of two
+    private static final int CHUNK_SIZE = 64;
+
+    // Splits a number into its chunk and its position in the chunk
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Initial number of slots of the index, a power of two
+    private static final int INITIAL_CAPACITY = 8;
+
+    // The slots of the index, each the number of a MAC plus one, 0 if empty
+    private volatile AtomicIntegerArray index;
+
+    // The MACs by number, chunk by chunk
+    private volatile MacAddress[][] macAddresses;
+
+    // The counts by number, chunk by chunk
+    private volatile AtomicIntegerArray[] counts;
+
+    // Number of distinct MACs
+    private volatile int size;
+
+    // The count of the leader in the high half, its number in the low half
+    private final AtomicLong leader;
+
+    /**
+     * Constructor function
+     */
+    MacAddressTally() {
+        this.index = new AtomicIntegerArray(INITIAL_CAPACITY);
+        this.macAddresses = new MacAddress[][] { new MacAddress[CHUNK_SIZE] };
+        this.counts = new AtomicIntegerArray[] {
+            new AtomicIntegerArray(CHUNK_SIZE)
+        };
+        this.size = 0;
+        this.leader = new AtomicLong();
+    }
+
+    /**
+     * Counts a reply
+     *
+     * @param macAddress The MAC of the reply
+     */
+    void increment(MacAddress macAddress) {
+        int number = this.find(macAddress.toLong());
+        if (number < 0) {
+            number = this.add(macAddress);
+        }
+        int count = this.counts[number >>> CHUNK_SHIFT]
+            .incrementAndGet(number & CHUNK_MASK);
+        long candidate = ((long)count << 32) | number;
+        long current;
+        while ((int)((current = this.leader.get()) >>> 32) < count &&
+               !this.leader.compareAndSet(current, candidate)) {
+            // Another MAC was counted meanwhile, comparing against it
+        }
+    }
+
+    /**
+     * Returns the number of distinct MACs counted
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the MAC with the highest count, null if none was counted
+     */
+    MacAddress getLeader() {
+        long current = this.leader.get();
+        if (current == 0) {
+            return null;
+        }
+        int number = (int)current;
+        return this.macAddresses[number >>> CHUNK_SHIFT][number & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the count of every MAC
+     * Counts taken while replies arrive may be of slightly different times
+     *
+     * @return A new map from each MAC to its count
+     */
+    HashMap<MacAddress, Integer> toMap() {
+        int size = this.size;
+        MacAddress[][] macAddresses = this.macAddresses;
+        AtomicIntegerArray[] counts = this.counts;
+        HashMap<MacAddress, Integer> map = new HashMap<MacAddress, Integer>();
+        for (int number = 0; number < size; number++) {
+            map.put(macAddresses[number >>> CHUNK_SHIFT][number & CHUNK_MASK],
+                    counts[number >>> CHUNK_SHIFT].get(number & CHUNK_MASK));
+        }
+        return map;
+    }
+
+    /**
+     * Finds the number of a MAC
+     *
+     * @param macAddress The packed MAC address
+     * @return The number, -1 if the MAC was not counted yet
+     */
+    private int find(long macAddress) {
+        AtomicIntegerArray index = this.index;
+        int mask = index.length() - 1;
+        int slot = hash(macAddress) & mask;
+        int value;
+        while ((value = index.get(slot)) != 0) {
+            int number = value - 1;
+            // Reading the slot made the MAC written before it visible
+            if (this.macAddresses[number >>> CHUNK_SHIFT][number & CHUNK_MASK]
+                .toLong() == macAddress) {
+                return number;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Numbers a MAC not counted yet
+     * Finds it again under the lock, as another reply may have added it
+     *
+     * @param macAddress The MAC
+     * @return The number of the MAC
+     */
+    private synchronized int add(MacAddress macAddress) {
+        int number = this.find(macAddress.toLong());
+        if (number >= 0) {
+            return number;
+        }
+        number = this.size;
+        int chunk = number >>> CHUNK_SHIFT;
+        if (chunk == this.counts.length) {
+            MacAddress[][] macAddresses = new MacAddress[2 * chunk][];
+            AtomicIntegerArray[] counts = new AtomicIntegerArray[2 * chunk];
+            System.arraycopy(this.macAddresses, 0, macAddresses, 0, chunk);
+            System.arraycopy(this.counts, 0, counts, 0, chunk);
+            this.macAddresses = macAddresses;
+            this.counts = counts;
+        }
+        if (this.counts[chunk] == null) {
+            this.macAddresses[chunk] = new MacAddress[CHUNK_SIZE];
+            this.counts[chunk] = new AtomicIntegerArray(CHUNK_SIZE);
+        }
+        this.macAddresses[chunk][number & CHUNK_MASK] = macAddress;
+
+        // Keeping the load factor under 3/4
+        if (4 * (number + 1) > 3 * this.index.length()) {
+            this.rebuild(2 * this.index.length());
+        }
+        this.insert(this.index, number);
+        this.size = number + 1;
+        return number;
+    }
+
+    /**
+     * Replaces the index with a larger one holding all the MACs
+     * Readers still probing the old index find every MAC they could before
+     *
+     * @param capacity The number of slots, a power of two
+     */
+    private void rebuild(int capacity) {
+        AtomicIntegerArray index = new AtomicIntegerArray(capacity);
+        for (int number = 0; number < this.size; number++) {
+            this.insert(index, number);
+        }
+        this.index = index;
+    }
+
+    /**
+     * Puts a number in the first empty slot of the probe sequence of its MAC
+     *
+     * @param index The index
+     * @param number The number of a MAC
+     */
+    private void insert(AtomicIntegerArray index, int number) {
+        int mask = index.length() - 1;
+        long macAddress = this.macAddresses[number >>> CHUNK_SHIFT]
+            [number & CHUNK_MASK].toLong();
+        int slot = hash(macAddress) & mask;
+        while (index.get(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.set(slot, number + 1);
+    }
+
+    /**
+     * Spreads the bits of a MAC, consecutive addresses are common
+     *
+     * @param macAddress The packed MAC address
+     * @return The hash
+     */
+    private static int hash(long macAddress) {
+        long hash = macAddress * 0x9E3779B97F4A7C15L;
+        return (int)(hash ^ (hash >>> 32));
+    }
+}
@@ -1,6 +1,10 @@
 package com.secarp.protocol.secarp;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
@@ -12,13 +16,15 @@ import com.secarp.protocol.Receivable;
 import com.secarp.protocol.Packet;
 import com.secarp.protocol.arp.ArpCache;
 import com.secarp.protocol.arp.ArpType;
+import com.secarp.trace.TraceRecord;
+import com.secarp.trace.TraceRecorder;
 
 /**
  * Represents the SecArp protocol stack
  */
 public class SecArp extends AddressResolutionProtocol implements Receivable {
-    // Arp Reply Wait time in milliseconds
-    private static final int ARP_REPLY_WAIT_TIME = 3000;
+    // Default Arp Reply Wait time in milliseconds
+    public static final int ARP_REPLY_WAIT_TIME = 3000;
 
     // The timeout for an entry, in seconds, in L1 Cache
     private static final int TTL_ARP_CACHE_L1 = 60;
@@ -26,8 +32,17 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
     // The timeout for an entry, in seconds, in L2 Cache
     private static final int TTL_ARP_CACHE_L2 = 3600;
 
+    // Default capacity of sequence number entries
+    public static final int SEQUENCE_NUMBER_CAPACITY = 1000;
+
+    // Arp Reply Wait time in milliseconds
+    private int arpReplyWaitTime;
+
     // Capacity of sequence number entries
-    private static final int SEQUENCE_NUMBER_CAPACITY = 1000;
+    private int sequenceNumberCapacity;
+
+    // Source of the sequence numbers
+    private Random random;
 
     // L1 Cache, similar to ARP cache
     private ArpCache L1Cache;
@@ -35,21 +50,54 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
     // L2 Cache
     private ArpCache L2Cache;
 
+    // The indexes of the caches in the metrics
+    private int L1CacheMetrics;
+    private int L2CacheMetrics;
+
     // The node associated with the protocol
     // Assuming one to one mapping with a particular node
     private Node node;
 
-    // Array of Sequence numbers of sent request packets
-    private SequenceNumberEntry[] sequenceNumberEntries;
+    // Sequence numbers of sent request packets
+    // Created with the first request, as most nodes never send one
+    private volatile SequenceNumberAllocator sequenceNumbers;
+
+    // Resolutions in progress, by the IP being resolved
+    // Shared by all the callers resolving the same IP
+    private Map<Ipv4Address, CompletableFuture<MacAddress>> pending;
 
     /**
      * Constructor function
      */
     public SecArp() {
-        this.L1Cache = new ArpCache(TTL_ARP_CACHE_L1);
-        this.L2Cache = new ArpCache(TTL_ARP_CACHE_L2);
-        this.sequenceNumberEntries =
-            new SequenceNumberEntry[SEQUENCE_NUMBER_CAPACITY];
+        this(SEQUENCE_NUMBER_CAPACITY, ARP_REPLY_WAIT_TIME, new Random());
+    }
+
+    /**
+     * Constructor function
+     *
+     * @param sequenceNumberCapacity The number of sequence numbers, all of
+     * which, up to 65536, can be in flight at a time
+     * @param arpReplyWaitTime The time, in milliseconds, replies are collected
+     * for
+     * @param random The source of the sequence numbers, seeded for
+     * reproducible runs
+     */
+    public SecArp(int sequenceNumberCapacity,
+                  int arpReplyWaitTime,
+                  Random random) {
+        if (sequenceNumberCapacity < 1) {
+            throw new IllegalArgumentException(
+                "Sequence number capacity must be positive");
+        }
+        this.sequenceNumberCapacity = sequenceNumberCapacity;
+        this.arpReplyWaitTime = arpReplyWaitTime;
+        this.random = random;
+        this.L1Cache = ArpCache.fromSystemProperties(TTL_ARP_CACHE_L1);
+        this.L2Cache = ArpCache.fromSystemProperties(TTL_ARP_CACHE_L2);
+        this.L1CacheMetrics = this.metrics.addCache("L1", this.L1Cache);
+        this.L2CacheMetrics = this.metrics.addCache("L2", this.L2Cache);
+        this.pending = new HashMap<Ipv4Address, CompletableFuture<MacAddress>>();
     }
 
     /**
@@ -70,78 +118,223 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
      * @{inheritDocs}
      */
     @Override
-    public MacAddress getMacAddress(Ipv4Address ipv4Address) {
-        MacAddress macAddress = L1Cache.lookup(ipv4Address);
+    public Node getNode() {
+        return this.node;
+    }
+
+    /**
+     * @{inheritDocs}
+     * Callers resolving the same IP share one resolution
+     */
+    @Override
+    public CompletableFuture<MacAddress> getMacAddressAsync(
+        Ipv4Address ipv4Address) {
+        MacAddress macAddress =
+            ArpCache.toMacAddress(L1Cache.lookup(ipv4Address.toInt()));
+        this.metrics.cacheLookup(this.L1CacheMetrics, macAddress != null);
         if (macAddress != null) {
             // Entry present in L1Cache
-            return macAddress;
-        } else if ( (macAddress = L2Cache.lookup(ipv4Address))
-                    != null) {
-            // Entry present in L2Cache
-            if (macAddress.matches(resolveIpToMac(macAddress,
-                                                 ipv4Address))) {
-                // Unicast ARP request succeeded
-                // The old node still has the same ip mac mapping
-                // update cache
-                L1Cache.put(ipv4Address, macAddress);
-                L2Cache.put(ipv4Address, macAddress);
-                this.node.getLogger().logArpCache();
-                return macAddress;
+            return CompletableFuture.completedFuture(macAddress);
+        }
+        CompletableFuture<MacAddress> future;
+        boolean outstanding;
+        synchronized (this.pending) {
+            future = this.pending.get(ipv4Address);
+            outstanding = future != null;
+            if (!outstanding) {
+                future = new CompletableFuture<MacAddress>();
+                this.pending.put(ipv4Address, future);
             }
         }
-        // Need to broadcast request
-        macAddress = resolveIpToMac(MacAddress.getBroadcast(),
-                                    ipv4Address);
-        // Updating cache
-        L1Cache.put(ipv4Address, macAddress);
-        L2Cache.put(ipv4Address, macAddress);
-        this.node.getLogger().logArpCache();
-        return macAddress;
+        if (!outstanding) {
+            this.measureResolution(future);
+            CompletableFuture<MacAddress> resolution = future;
+            resolve(ipv4Address).whenComplete((resolvedMacAddress, error) -> {
+                    // Later callers start a resolution of their own
+                    synchronized (this.pending) {
+                        this.pending.remove(ipv4Address);
+                    }
+                    if (error != null) {
+                        resolution.completeExceptionally(error);
+                    } else {
+                        resolution.complete(resolvedMacAddress);
+                    }
+                });
+        }
+        // Callers get a future of their own, so that none of them can
+        // complete the shared one
+        return future.thenApply(Function.identity());
     }
 
     /**
-     * Returns Target Mac Address after sending ARP request packets
+     * Resolves an Ip address missing from the L1 Cache, verifying the L2
+     * Cache entry if there is one
      *
-     * @param receiverMac Mac Address of the receiver
-     * @param receiverIp Ip Address which needs to be resolved
+     * @param ipv4Address Ip address which needs to be resolved
+     * @return Completes with the mac address found
+     */
+    private CompletableFuture<MacAddress> resolve(Ipv4Address ipv4Address) {
+        MacAddress cachedMacAddress =
+            ArpCache.toMacAddress(L2Cache.lookup(ipv4Address.toInt()));
+        this.metrics.cacheLookup(this.L2CacheMetrics, cachedMacAddress != null);
+        if (cachedMacAddress == null) {
+            // Need to broadcast request
+            return broadcastRequest(ipv4Address);
+        }
+        // Entry present in L2Cache
+        return resolveIpToMac(cachedMacAddress, ipv4Address).thenCompose(
+            resolvedMacAddress -> {
+                if (resolvedMacAddress != null &&
+                    cachedMacAddress.matches(resolvedMacAddress)) {
+                    // Unicast ARP request succeeded
+                    // The old node still has the same ip mac mapping
+                    // update cache
+                    updateCaches(ipv4Address, cachedMacAddress);
+                    return CompletableFuture.completedFuture(cachedMacAddress);
+                }
+                // Need to broadcast request
+                return broadcastRequest(ipv4Address);
+            });
+    }
+
+    /**
+     * Resolves an Ip address by broadcasting a request and updates the caches
+     *
+     * @param ipv4Address Ip address which needs to be resolved
+     * @return Completes with the mac address found
+     */
+    private CompletableFuture<MacAddress> broadcastRequest(
+        Ipv4Address ipv4Address) {
+        return resolveIpToMac(MacAddress.getBroadcast(), ipv4Address)
+            .thenApply(macAddress -> {
+                    if (macAddress != null) {
+                        // Updating cache
+                        updateCaches(ipv4Address, macAddress);
+                    }
+                    return macAddress;
+                });
+    }
+
+    /**
+     * Stores a verified Ip Mac pair in both the caches
+     *
+     * @param ipv4Address The ipv4 address
+     * @param macAddress The Mac address
+     */
+    private void updateCaches(Ipv4Address ipv4Address, MacAddress macAddress) {
+        L1Cache.put(ipv4Address.toInt(), macAddress.toLong());
+        L2Cache.put(ipv4Address.toInt(), macAddress.toLong());
+        this.node.getLogger().logArpCache(ipv4Address, macAddress);
+        TraceRecorder traceRecorder = this.node.getTraceRecorder();
+        if (traceRecorder != null) {
+            long time = this.node.getScheduler().getCurrentTimeInMillis();
+            traceRecorder.recordCachePut(time,
+                                         this.node.getId(),
+                                         TraceRecord.L1_CACHE,
+                                         ipv4Address,
+                                         macAddress);
+            traceRecorder.recordCachePut(time,
+                                         this.node.getId(),
+                                         TraceRecord.L2_CACHE,
+                                         ipv4Address,
+                                         macAddress);
+        }
+    }
+
+    /**
+     * Logs and traces the outcome of a conflict check
      *
-     * @return The mac address found
+     * @param ipv4Address Ip address being resolved
+     * @param conflict Whether more than one MAC replied
      */
-    public MacAddress resolveIpToMac(MacAddress receiverMac,
-                                     Ipv4Address receiverIp) {
-        MacAddress targetMacAddress;
-        SequenceNumberEntry sequenceNumberEntry = sendRequestPacket(receiverMac,
-                                                                    receiverIp,
-                                                                    false);
-
-        if (!sequenceNumberEntry.conflict()) {
-            // No clash found
-            // Conflict will never arise in case of unicast flow as request is
-            // sent to only 1 host
-            System.out.println("No clash found\n");
-            targetMacAddress = sequenceNumberEntry.getMacAddressWithMaxCount();
-        } else {
-            // Clash found
-            System.out.println("Clash found\n");
-            sequenceNumberEntry = sendRequestPacket(MacAddress.getBroadcast(),
-                                                    receiverIp,
-                                                    true
-                                                    );
-            targetMacAddress = sequenceNumberEntry.getMacAddressWithMaxCount();
+    private void logConflictCheck(Ipv4Address ipv4Address, boolean conflict) {
+        this.node.getLogger().logConflictCheck(conflict);
+        TraceRecorder traceRecorder = this.node.getTraceRecorder();
+        if (traceRecorder != null) {
+            traceRecorder.recordConflictCheck(
+                this.node.getScheduler().getCurrentTimeInMillis(),
+                this.node.getId(),
+                ipv4Address,
+                conflict);
         }
-        return targetMacAddress;
     }
 
     /**
-     * Get sequence number entry corresponding to the generated request packet
+     * Finds Target Mac Address by sending ARP request packets
+     * A unicast request settles on the first reply, a broadcast request on
+     * the second distinct Mac replying, in which case the flood starts right
+     * away
+     *
+     * @param receiverMac Mac Address of the receiver
+     * @param receiverIp Ip Address which needs to be resolved
+     * @return Completes with the mac address found
+     */
+    public CompletableFuture<MacAddress> resolveIpToMac(MacAddress receiverMac,
+                                                        Ipv4Address receiverIp) {
+        int settleMacCount = receiverMac.isBroadcast() ? 2 : 1;
+        return sendRequestPacket(receiverMac, receiverIp, false, settleMacCount)
+            .thenCompose(sequenceNumberEntry -> {
+                    if (!sequenceNumberEntry.conflict()) {
+                        // No clash found
+                        // Conflict will never arise in case of unicast flow as
+                        // request is sent to only 1 host
+                        logConflictCheck(receiverIp, false);
+                        return CompletableFuture.completedFuture(
+                            sequenceNumberEntry.getMacAddressWithMaxCount());
+                    }
+                    // Clash found
+                    logConflictCheck(receiverIp, true);
+                    this.metrics.conflict();
+                    this.metrics.floodRequest();
+                    // The flood is decided by the counts, so it always waits
+                    // the whole wait time
+                    return sendRequestPacket(MacAddress.getBroadcast(),
+                                             receiverIp,
+                                             true,
+                                             0)
+                        .thenApply(
+                            SequenceNumberEntry::getMacAddressWithMaxCount);
+                });
+    }
+
+    /**
+     * Sends a request packet and collects the replies till the outcome is
+     * settled, or for the wait time at most
+     *
      * @param macAddress Mac address of the receiver
      * @param ipv4Address Ip address which needs to be resolved
      * @param arpFloodFlag Value of the arp flood flag in request packet
+     * @param settleMacCount Number of distinct Macs replying after which the
+     * outcome is settled, 0 to always wait the whole wait time
+     * @return Completes with the sequence number entry corresponding to the
+     * generated request packet, fails with IllegalStateException if no
+     * sequence number is free
      */
-    public SequenceNumberEntry sendRequestPacket(MacAddress macAddress,
-                                                 Ipv4Address ipv4Address,
-                                                 boolean arpFloodFlag) {
-        int randomSequenceNumber = generateSequenceNumber();
+    public CompletableFuture<SequenceNumberEntry> sendRequestPacket(
+        MacAddress macAddress,
+        Ipv4Address ipv4Address,
+        boolean arpFloodFlag,
+        int settleMacCount) {
+        SequenceNumberAllocator sequenceNumbers = this.getSequenceNumbers();
+        // Initializing sequence number entry
+        SequenceNumberEntry sequenceNumberEntry =
+            new SequenceNumberEntry(ipv4Address,
+                                    Timer.getCurrentTime() +
+                                    this.arpReplyWaitTime,
+                                    settleMacCount
+                                    );
+        int randomSequenceNumber;
+        try {
+            randomSequenceNumber =
+                sequenceNumbers.allocate(sequenceNumberEntry);
+        } catch (IllegalStateException e) {
+            // Failing the resolution, so that its callers are not left
+            // waiting and the IP can be resolved again
+            CompletableFuture<SequenceNumberEntry> failed =
+                new CompletableFuture<SequenceNumberEntry>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
         // Creating request packet
         Packet requestPacket = createRequestPacket(this.node.getMacAddress(),
                                                    this.node.getIpv4Address(),
@@ -152,17 +345,15 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
                                                    );
         // Send Request Packet
         this.node.sendPacket(requestPacket, macAddress);
-        // Initializing sequence number entry
-        sequenceNumberEntries[randomSequenceNumber] =
-            new SequenceNumberEntry(ipv4Address,
-                                    Timer.getCurrentTime() + ARP_REPLY_WAIT_TIME
-                                    );
-        Timer.sleep(ARP_REPLY_WAIT_TIME);
-        SequenceNumberEntry sequenceNumberEntry =
-            sequenceNumberEntries[randomSequenceNumber];
-        // Removing sequence number entry
-        sequenceNumberEntries[randomSequenceNumber] = null;
-        return sequenceNumberEntry;
+        requestPacket.release();
+        // The slot stays taken for the whole wait time, so that late replies
+        // are not counted against another request
+        this.node.getScheduler().schedule(this.node, this.arpReplyWaitTime, () -> {
+                // Removing sequence number entry
+                sequenceNumbers.release(randomSequenceNumber);
+                sequenceNumberEntry.settle();
+            });
+        return sequenceNumberEntry.getResult();
     }
 
     /**
@@ -182,8 +373,13 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
 
         // Checking if packet is a reply packet
         if (header.getArpType() == ArpType.REPLY) {
+            SequenceNumberAllocator sequenceNumbers = this.sequenceNumbers;
+            if (sequenceNumbers == null) {
+                // No request generated yet
+                return;
+            }
             SequenceNumberEntry sequenceNumberEntry =
-                sequenceNumberEntries[header.getSequenceNumber()];
+                sequenceNumbers.get(header.getSequenceNumber());
 
             if (sequenceNumberEntry == null) {
                 // No request generated for this sequence number
@@ -206,10 +402,12 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
                                           );
             } else {
                 // Trying to lookup in cache
-                MacAddress address = L1Cache.lookup(header.getReceiverIp());
+                MacAddress address = ArpCache.toMacAddress(
+                    L1Cache.lookup(header.getReceiverIp().toInt()));
                 if (address == null) {
                     // Not found in L1Cache
-                    address = L2Cache.lookup(header.getReceiverIp());
+                    address = ArpCache.toMacAddress(
+                        L2Cache.lookup(header.getReceiverIp().toInt()));
                     if (address == null) {
                         // Not found in L2Cache
                         // No need to send any reply packet
@@ -225,35 +423,38 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
             }
             if (header.isArpFloodFlag()) {
                 // Flood till a particular time
-                long current_time = Timer.getCurrentTimeInMillis();
-                while (Timer.getCurrentTimeInMillis() <
-                       (current_time + ARP_REPLY_WAIT_TIME)) {
-                    this.node.sendPacket(reply,
-                                         header.getSenderMac()
-                                         );
-                }
+                this.metrics.floodReply();
+                this.node.floodPacket(reply,
+                                      header.getSenderMac(),
+                                      this.arpReplyWaitTime
+                                      );
             } else {
                 this.node.sendPacket(reply,
                                      header.getSenderMac()
                                      );
             }
+            reply.release();
         }
     }
 
     /**
-     * Generates random sequence number
-     *
-     * @return A random sequence number
+     * Returns the sequence numbers of the node, creating them with the first
+     * request
      */
-    private int generateSequenceNumber() {
-        Random rand = new Random();
-
-        int randomSequenceNumber = rand.nextInt(SEQUENCE_NUMBER_CAPACITY);
-        while (sequenceNumberEntries[randomSequenceNumber] != null) {
-            randomSequenceNumber = rand.nextInt(SEQUENCE_NUMBER_CAPACITY);
+    private SequenceNumberAllocator getSequenceNumbers() {
+        SequenceNumberAllocator sequenceNumbers = this.sequenceNumbers;
+        if (sequenceNumbers == null) {
+            synchronized (this) {
+                sequenceNumbers = this.sequenceNumbers;
+                if (sequenceNumbers == null) {
+                    sequenceNumbers = new SequenceNumberAllocator(
+                        this.sequenceNumberCapacity,
+                        this.random);
+                    this.sequenceNumbers = sequenceNumbers;
+                }
+            }
         }
-
-        return randomSequenceNumber;
+        return sequenceNumbers;
     }
 
     /**
@@ -275,7 +476,7 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
      * @param sequenceNumber The sequence number of the packet
      * @param floodFlag The value of the flood flag
      *
-     * @return The SecARP Packet
+     * @return The SecARP Packet, from the pool
      */
     public static Packet createRequestPacket(MacAddress senderMac,
                                              Ipv4Address senderIp,
@@ -284,16 +485,16 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
                                              int sequenceNumber,
                                              boolean floodFlag
                                              ) {
-        Header secArpHeader = new SecArpHeader(senderMac,
-                                               senderIp,
-                                               receiverMac,
-                                               receiverIp,
-                                               ArpType.REQUEST,
-                                               sequenceNumber,
-                                               floodFlag
-                                               );
-
-        Packet arpPacket = new Packet(secArpHeader);
+        Header secArpHeader = SecArpHeader.obtain(senderMac,
+                                                  senderIp,
+                                                  receiverMac,
+                                                  receiverIp,
+                                                  ArpType.REQUEST,
+                                                  sequenceNumber,
+                                                  floodFlag
+                                                  );
+
+        Packet arpPacket = Packet.obtain(secArpHeader);
         return arpPacket;
     }
 
@@ -306,7 +507,7 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
      * @param receiverIp The IP of the receiver node
      * @param sequenceNumber The sequence number of the packet
      *
-     * @return The ARP Packet
+     * @return The ARP Packet, from the pool
      */
     public static Packet createReplyPacket(MacAddress senderMac,
                                            Ipv4Address senderIp,
@@ -314,16 +515,16 @@ public class SecArp extends AddressResolutionProtocol implements Receivable {
                                            Ipv4Address receiverIp,
                                            int sequenceNumber
                                            ) {
-        Header secArpHeader = new SecArpHeader(senderMac,
-                                               senderIp,
-                                               receiverMac,
-                                               receiverIp,
-                                               ArpType.REPLY,
-                                               sequenceNumber,
-                                               false
-                                               );
-
-        Packet arpPacket = new Packet(secArpHeader);
+        Header secArpHeader = SecArpHeader.obtain(senderMac,
+                                                  senderIp,
+                                                  receiverMac,
+                                                  receiverIp,
+                                                  ArpType.REPLY,
+                                                  sequenceNumber,
+                                                  false
+                                                  );
+
+        Packet arpPacket = Packet.obtain(secArpHeader);
         return arpPacket;
     }
 }
@@ -1,14 +1,42 @@
 package com.secarp.protocol.secarp;
 
+import java.nio.ByteBuffer;
+
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
+import com.secarp.common.ObjectPool;
+import com.secarp.protocol.EtherType;
 import com.secarp.protocol.Header;
+import com.secarp.protocol.arp.ArpHeader;
 import com.secarp.protocol.arp.ArpType;
 
 /**
  * The SecARP Header
+ * On the wire it is the 28 byte ARP packet, see ArpHeader, extended by:
+ *
+ * 28  sequence number (4 bytes)
+ * 32  flags (1 byte), bit 0 is the ARP flood flag
  */
 public class SecArpHeader extends Header {
+    // The length of the wire form in bytes
+    public static final int LENGTH = ArpHeader.LENGTH + 5;
+
+    // Offsets of the extension fields in the wire form
+    static final int SEQUENCE_NUMBER_OFFSET = ArpHeader.LENGTH;
+    static final int FLAGS_OFFSET = ArpHeader.LENGTH + 4;
+
+    // The ARP flood flag bit
+    static final int FLOOD_FLAG = 0x01;
+
+    // The free pooled headers
+    private static final ObjectPool<SecArpHeader> POOL =
+        new ObjectPool<SecArpHeader>(() -> {
+                SecArpHeader header =
+                    new SecArpHeader(null, null, null, null, null, 0, false);
+                header.pooled = true;
+                return header;
+            });
+
     // Sender Hardware Address
     private MacAddress senderMac;
 
@@ -30,6 +58,9 @@ public class SecArpHeader extends Header {
     // ARP Flood Flag
     private boolean arpFloodFlag;
 
+    // Whether the header belongs to the pool
+    private boolean pooled;
+
     /**
      * Constructor function
      */
@@ -50,6 +81,45 @@ public class SecArpHeader extends Header {
         this.arpFloodFlag = arpFloodFlag;
     }
 
+    /**
+     * Takes a header from the pool of the current thread
+     * It goes back once the pooled packet holding it is recycled
+     *
+     * @return The header
+     */
+    public static SecArpHeader obtain(MacAddress senderMac,
+                                      Ipv4Address senderIp,
+                                      MacAddress receiverMac,
+                                      Ipv4Address receiverIp,
+                                      ArpType arpType,
+                                      int sequenceNumber,
+                                      boolean arpFloodFlag
+                                      ) {
+        SecArpHeader header = POOL.acquire();
+        header.senderMac = senderMac;
+        header.senderIp = senderIp;
+        header.receiverMac = receiverMac;
+        header.receiverIp = receiverIp;
+        header.arpType = arpType;
+        header.sequenceNumber = sequenceNumber;
+        header.arpFloodFlag = arpFloodFlag;
+        return header;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recycle() {
+        if (this.pooled) {
+            this.senderMac = null;
+            this.senderIp = null;
+            this.receiverMac = null;
+            this.receiverIp = null;
+            POOL.release(this);
+        }
+    }
+
     /**
      * Getter functions
      */
@@ -85,7 +155,47 @@ public class SecArpHeader extends Header {
      * @{inheritDoc}
      */
     @Override
-    public byte[] getBytes() {
-        return null; //TODO
+    public int getEtherType() {
+        return EtherType.SEC_ARP;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public int getLength() {
+        return LENGTH;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void encode(ByteBuffer buffer) {
+        ArpHeader.encode(buffer,
+                         this.senderMac,
+                         this.senderIp,
+                         this.receiverMac,
+                         this.receiverIp,
+                         this.arpType
+                         );
+        buffer.putInt(this.sequenceNumber);
+        buffer.put((byte)(this.arpFloodFlag ? FLOOD_FLAG : 0));
+    }
+
+    /**
+     * Decodes the wire form of a header
+     *
+     * @param buffer The buffer holding the wire form
+     * @param offset The index at which the header starts
+     *
+     * @return The decoded header, null if the header is not valid
+     */
+    public static SecArpHeader decode(ByteBuffer buffer, int offset) {
+        SecArpHeaderView view = new SecArpHeaderView().wrap(buffer, offset);
+        if (!view.isValid()) {
+            return null;
+        }
+        return view.toHeader();
     }
 }
@@ -0,0 +1,52 @@
+package com.secarp.protocol.secarp;
+
+import java.nio.ByteBuffer;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.protocol.arp.ArpHeaderView;
+
+/**
+ * A flyweight over the wire form of a SecARP header
+ * Adds the sequence number and flags to the fields of the ARP view
+ */
+public class SecArpHeaderView extends ArpHeaderView {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SecArpHeaderView wrap(ByteBuffer buffer, int offset) {
+        super.wrap(buffer, offset);
+        return this;
+    }
+
+    /**
+     * Getter functions
+     */
+    public int getSequenceNumber() {
+        return this.buffer.getInt(this.offset +
+                                  SecArpHeader.SEQUENCE_NUMBER_OFFSET);
+    }
+
+    public boolean isArpFloodFlag() {
+        return (this.buffer.get(this.offset + SecArpHeader.FLAGS_OFFSET) &
+                SecArpHeader.FLOOD_FLAG) != 0;
+    }
+
+    /**
+     * Builds the object form of the viewed header
+     *
+     * @return The header
+     */
+    @Override
+    public SecArpHeader toHeader() {
+        return new SecArpHeader(MacAddress.valueOf(this.getSenderMac()),
+                                Ipv4Address.valueOf(this.getSenderIp()),
+                                MacAddress.valueOf(this.getReceiverMac()),
+                                Ipv4Address.valueOf(this.getReceiverIp()),
+                                this.getArpType(),
+                                this.getSequenceNumber(),
+                                this.isArpFloodFlag()
+                                );
+    }
+}
@@ -0,0 +1,270 @@
+package com.secarp.protocol.secarp;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out the sequence numbers of the requests in flight and finds the
+ * request a reply is for
+ *
+ * Every request in flight takes a slot, one per sequence number up to
+ * MAX_SLOTS. The free slots wait in a ring without locks, in random order
+ * at first, so taking and freeing a slot cost the same however many are
+ * taken, and a freed slot is only taken again after all the other free
+ * ones. The sequence number is a keyed permutation of the slot and its
+ * generation, which moves on whenever the slot is freed if there are more
+ * numbers than slots. The permutation is a swap-or-not shuffle over the
+ * whole range of numbers, keyed from the random source, so the numbers in
+ * flight look uniformly spread. Finding the request of a reply runs the
+ * permutation backwards, which also takes constant time.
+ */
+class SequenceNumberAllocator {
+    // Most requests in flight at a time
+    private static final int MAX_SLOTS = 1 << 16;
+
+    // Number of rounds of the permutation
+    private static final int ROUNDS = 16;
+
+    // The sequence numbers are 0 up to this, excluded
+    private final int range;
+
+    // Number of slots
+    private final int slots;
+
+    // Number of generations of every slot
+    private final int generations;
+
+    // The request in each slot, null if free
+    private final AtomicReferenceArray<SequenceNumberEntry> entries;
+
+    // The current generation of each slot
+    private final AtomicIntegerArray generationOf;
+
+    // The cells of the ring of free slots, a power of two of them
+    private final AtomicIntegerArray ring;
+
+    // The turn of each cell: its position in the ring while it waits for a
+    // slot, one more once it holds one
+    private final AtomicLongArray turns;
+
+    // The positions of the next free slot to take and to give back
+    private final AtomicLong head;
+    private final AtomicLong tail;
+
+    // Partner offset and key of every round of the permutation
+    private final int[] offsets;
+    private final long[] keys;
+
+    /**
+     * Constructor function
+     *
+     * @param capacity The number of sequence numbers
+     * @param random The source of the order of the slots and of the keys of
+     * the permutation
+     */
+    SequenceNumberAllocator(int capacity, Random random) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "Sequence number capacity must be positive");
+        }
+        this.slots = Math.min(capacity, MAX_SLOTS);
+        this.generations = capacity / this.slots;
+        this.range = this.slots * this.generations;
+        this.entries =
+            new AtomicReferenceArray<SequenceNumberEntry>(this.slots);
+        this.generationOf = new AtomicIntegerArray(this.slots);
+        int cells = Integer.highestOneBit(this.slots);
+        if (cells < this.slots) {
+            cells *= 2;
+        }
+        this.ring = new AtomicIntegerArray(cells);
+        this.turns = new AtomicLongArray(cells);
+        for (int i = 0; i < cells; i++) {
+            this.turns.set(i, i);
+        }
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+
+        // Queueing the free slots in random order
+        int[] order = new int[this.slots];
+        for (int i = 0; i < this.slots; i++) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        for (int slot : order) {
+            this.free(slot);
+        }
+
+        this.offsets = new int[ROUNDS];
+        this.keys = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            this.offsets[i] = random.nextInt(this.range);
+            this.keys[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Returns the number of requests that can be in flight at a time
+     */
+    int getSlots() {
+        return this.slots;
+    }
+
+    /**
+     * Takes a sequence number for a request
+     *
+     * @param entry The request
+     * @return The sequence number
+     * @throws IllegalStateException If every slot is taken
+     */
+    int allocate(SequenceNumberEntry entry) {
+        int mask = this.ring.length() - 1;
+        int slot;
+        while (true) {
+            long position = this.head.get();
+            int cell = (int)position & mask;
+            long turn = this.turns.get(cell);
+            if (turn < position + 1) {
+                if (this.tail.get() <= position) {
+                    throw new IllegalStateException("No free sequence number");
+                }
+                // A slot being given back is not in its cell yet
+                continue;
+            }
+            if (turn == position + 1 &&
+                this.head.compareAndSet(position, position + 1)) {
+                slot = this.ring.get(cell);
+                // The cell waits for the slot given back a lap later
+                this.turns.set(cell, position + mask + 1);
+                break;
+            }
+            // Another allocation took the cell meanwhile
+        }
+        this.entries.set(slot, entry);
+        return this.permute(this.generationOf.get(slot) * this.slots + slot);
+    }
+
+    /**
+     * Returns the request a sequence number was handed out for
+     *
+     * @param sequenceNumber The sequence number of a reply
+     * @return The request, null if the number is not in flight
+     */
+    SequenceNumberEntry get(int sequenceNumber) {
+        int slot = this.slotOf(sequenceNumber);
+        return slot < 0 ? null : this.entries.get(slot);
+    }
+
+    /**
+     * Gives back a sequence number handed out by allocate
+     * Has no effect if the number is not in flight
+     *
+     * @param sequenceNumber The sequence number
+     */
+    void release(int sequenceNumber) {
+        int slot = this.slotOf(sequenceNumber);
+        if (slot < 0) {
+            return;
+        }
+        // Replies carrying the number stop matching before the slot is reused
+        this.generationOf.set(slot,
+                              (this.generationOf.get(slot) + 1) %
+                              this.generations);
+        this.entries.set(slot, null);
+        this.free(slot);
+    }
+
+    /**
+     * Puts a slot at the end of the ring of free slots
+     * The ring has a cell for every slot, so it never runs full
+     *
+     * @param slot The slot
+     */
+    private void free(int slot) {
+        int mask = this.ring.length() - 1;
+        while (true) {
+            long position = this.tail.get();
+            int cell = (int)position & mask;
+            if (this.turns.get(cell) == position &&
+                this.tail.compareAndSet(position, position + 1)) {
+                this.ring.set(cell, slot);
+                // Publishing the slot to the allocation of this position
+                this.turns.set(cell, position + 1);
+                return;
+            }
+            // Another release took the cell meanwhile
+        }
+    }
+
+    /**
+     * Returns the slot of a sequence number in flight
+     *
+     * @param sequenceNumber The sequence number
+     * @return The slot, -1 if the number is not in flight
+     */
+    private int slotOf(int sequenceNumber) {
+        if (sequenceNumber < 0 || sequenceNumber >= this.range) {
+            return -1;
+        }
+        int index = this.unpermute(sequenceNumber);
+        int slot = index % this.slots;
+        if (this.generationOf.get(slot) != index / this.slots ||
+            this.entries.get(slot) == null) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Maps a slot and generation to its sequence number
+     * Every round pairs each number with another one and swaps the pair if
+     * the key says so
+     *
+     * @param index The generation times the number of slots, plus the slot
+     * @return The sequence number
+     */
+    private int permute(int index) {
+        for (int i = 0; i < ROUNDS; i++) {
+            index = this.round(i, index);
+        }
+        return index;
+    }
+
+    /**
+     * Maps a sequence number back to its slot and generation
+     * Each round undoes itself, so they only run in the reverse order
+     *
+     * @param sequenceNumber The sequence number
+     * @return The generation times the number of slots, plus the slot
+     */
+    private int unpermute(int sequenceNumber) {
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            sequenceNumber = this.round(i, sequenceNumber);
+        }
+        return sequenceNumber;
+    }
+
+    /**
+     * Runs one round of the permutation
+     *
+     * @param round The round
+     * @param value A number below the range
+     * @return The number itself or its partner in the round
+     */
+    private int round(int round, int value) {
+        int partner = this.offsets[round] - value;
+        if (partner < 0) {
+            partner += this.range;
+        }
+        // Both numbers of a pair decide on the larger one, so they agree
+        long decider = Math.max(value, partner) ^ this.keys[round];
+        decider *= 0x9E3779B97F4A7C15L;
+        decider ^= decider >>> 29;
+        decider *= 0xBF58476D1CE4E5B9L;
+        return (decider >>> 63) == 1 ? partner : value;
+    }
+}
@@ -1,13 +1,16 @@
 package com.secarp.protocol.secarp;
 
 import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.secarp.address.Ipv4Address;
 import com.secarp.address.MacAddress;
 
 /**
  * Represents information corresponding to a sequence number
+ * Replies may be counted from several threads at once. Counting one, and
+ * checking for a conflict or the MAC with the most replies, take constant
+ * time and allocate nothing once every replying MAC has been seen.
  */
 public class SequenceNumberEntry {
     // Ip address of the target node
@@ -16,8 +19,15 @@ public class SequenceNumberEntry {
     // Time after which all replies will be treated as invalid
     private int expirationTime;
 
-    // Map from Mac address to its count
-    private HashMap<MacAddress, Integer> macCountMap;
+    // The number of replies of each Mac address
+    private final MacAddressTally tally;
+
+    // Number of distinct Macs after which the outcome is settled, 0 if only
+    // the expiration settles it
+    private int settleMacCount;
+
+    // Completes with this entry once the outcome is settled
+    private CompletableFuture<SequenceNumberEntry> result;
 
     /**
      * Constructor function
@@ -25,9 +35,24 @@ public class SequenceNumberEntry {
     public SequenceNumberEntry(Ipv4Address ipv4Address,
                                int expirationTime
                                ) {
+        this(ipv4Address, expirationTime, 0);
+    }
+
+    /**
+     * Constructor function
+     *
+     * @param settleMacCount Number of distinct Macs after which the outcome
+     * is settled, 0 if only the expiration settles it
+     */
+    public SequenceNumberEntry(Ipv4Address ipv4Address,
+                               int expirationTime,
+                               int settleMacCount
+                               ) {
         this.ipv4Address = ipv4Address;
         this.expirationTime = expirationTime;
-        this.macCountMap = new HashMap<>();
+        this.tally = new MacAddressTally();
+        this.settleMacCount = settleMacCount;
+        this.result = new CompletableFuture<SequenceNumberEntry>();
     }
 
     /**
@@ -49,12 +74,15 @@ public class SequenceNumberEntry {
         this.expirationTime = expirationTime;
     }
 
+    /**
+     * Returns a copy of the counts of the Mac addresses
+     */
     public HashMap<MacAddress, Integer> getMacCountMap() {
-        return this.macCountMap;
+        return this.tally.toMap();
     }
 
-    public void setMacCountMap(HashMap<MacAddress, Integer> macCountMap) {
-        this.macCountMap = macCountMap;
+    public CompletableFuture<SequenceNumberEntry> getResult() {
+        return this.result;
     }
 
     /**
@@ -63,36 +91,36 @@ public class SequenceNumberEntry {
      * @param macAddress
      */
     public void updateMacCount(MacAddress macAddress) {
-        this.macCountMap.putIfAbsent(macAddress, 0);
-        // Increments existing entry
-        this.macCountMap.put(macAddress, this.macCountMap.get(macAddress) + 1);
+        this.tally.increment(macAddress);
+        if (this.settleMacCount > 0 &&
+            this.tally.size() >= this.settleMacCount) {
+            this.settle();
+        }
+    }
+
+    /**
+     * Settles the outcome with the replies counted so far
+     * Has no effect once settled
+     */
+    public void settle() {
+        this.result.complete(this);
     }
 
     /**
      * Returns Mac Address with maximum count
+     * Of Mac addresses with the same count, the first to reach it wins
+     *
+     * @return The Mac address, null if no reply was counted
      */
     public MacAddress getMacAddressWithMaxCount() {
-        Map.Entry<MacAddress, Integer> maxEntry = null;
-        System.out.println("Contents of macCountMap:");
-        for (Map.Entry<MacAddress, Integer> entry: this.macCountMap.entrySet()) {
-            System.out.println(entry.getKey() + ": " + entry.getValue());
-            if (maxEntry == null || entry.getValue().
-                compareTo(maxEntry.getValue())> 0) {
-                maxEntry = entry;
-            }
-        }
-        System.out.println();
-        if (maxEntry == null) {
-            return null;
-        }
-        return maxEntry.getKey();
+        return this.tally.getLeader();
     }
 
     /**
      * Returns the size of the mac to count map
      */
     public int getMacCountMapSize() {
-        return this.macCountMap.size();
+        return this.tally.size();
     }
 
     /**
@@ -102,6 +130,6 @@ public class SequenceNumberEntry {
      * @return Whether conflict arised or not
      */
     public boolean conflict() {
-        return this.macCountMap.size() != 1;
+        return this.tally.size() != 1;
     }
 }
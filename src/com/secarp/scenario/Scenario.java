@@ -0,0 +1,369 @@
+package com.secarp.scenario;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.common.EventType;
+import com.secarp.device.AttackerNode;
+import com.secarp.device.Node;
+import com.secarp.device.Router;
+import com.secarp.network.DistributedNetwork;
+import com.secarp.network.Ethernet;
+import com.secarp.network.Network;
+import com.secarp.network.Switch;
+import com.secarp.network.SwitchedNetwork;
+import com.secarp.protocol.AddressResolutionProtocol;
+import com.secarp.protocol.Packet;
+import com.secarp.protocol.arp.Arp;
+import com.secarp.protocol.secarp.SecArp;
+import com.secarp.scheduler.DistributedScheduler;
+import com.secarp.scheduler.Scheduler;
+
+/**
+ * A topology and a workload, built into a network on demand
+ * See ScenarioLoader for the text form of a scenario
+ */
+public class Scenario {
+    // The system property setting the rank of this process in a cluster
+    public static final String RANK_PROPERTY = "secarp.rank";
+
+    // Capacity of the receiving queue of the network
+    private static final int NETWORK_CAPACITY = 10;
+
+    /**
+     * A range of nodes with consecutive addresses
+     */
+    static class NodeGroup {
+        int count;
+        Ipv4Address firstIpv4Address;
+        MacAddress firstMacAddress;
+        String protocol;
+        // The victim of the attackers, null for regular nodes
+        Ipv4Address victimIpv4Address;
+        // The id of the switch the nodes are connected to
+        int switchId;
+        // The broadcast domain of the nodes
+        int vlan = Network.DEFAULT_VLAN;
+        // The router of the nodes, null if all IPs are on the link
+        Ipv4Address gateway;
+        // The length of the prefix of the subnet of the nodes
+        int prefixLength;
+        // The router the node is an interface of, null for regular nodes
+        Integer routerId;
+    }
+
+    /**
+     * A learning switch, linked to one defined before it
+     */
+    static class SwitchSpec {
+        int uplink;
+        int camCapacity = SwitchedNetwork.CAM_CAPACITY;
+        long agingTime = SwitchedNetwork.AGING_TIME;
+    }
+
+    /**
+     * A forged reply, claiming an IP for the MAC of an attacker
+     */
+    static class Spoof {
+        long time;
+        Ipv4Address attackerIpv4Address;
+        Ipv4Address claimedIpv4Address;
+        Ipv4Address victimIpv4Address;
+        int sequenceNumber;
+    }
+
+    /**
+     * Data packets from a range of nodes to a range of nodes
+     * The k-th source sends to the k-th destination, wrapping around the
+     * destinations
+     */
+    static class Traffic {
+        long time;
+        Ipv4Address firstSource;
+        int sources;
+        Ipv4Address firstDestination;
+        int destinations;
+        int count;
+        long interval;
+        byte[] payload;
+    }
+
+    // The scheduler to run the scenario on, null for the one selected by the
+    // system properties
+    String scheduler;
+
+    // The event types logged, null to keep the defaults of the Logger
+    List<EventType> logged;
+
+    // The settings of the SecArp nodes
+    int sequenceNumberCapacity = SecArp.SEQUENCE_NUMBER_CAPACITY;
+    int arpReplyWaitTime = SecArp.ARP_REPLY_WAIT_TIME;
+
+    // The seed of the sequence numbers of the SecArp nodes, null for
+    // unseeded runs
+    Long seed;
+
+    // The address each process of the simulation listens on, by rank, null
+    // for a simulation in a single process
+    List<InetSocketAddress> cluster;
+
+    // The switches, by id, none for a single Ethernet segment
+    List<SwitchSpec> switches = new ArrayList<SwitchSpec>();
+
+    // The nodes, spoofed replies and data packets
+    List<NodeGroup> nodeGroups = new ArrayList<NodeGroup>();
+    List<Spoof> spoofs = new ArrayList<Spoof>();
+    List<Traffic> traffic = new ArrayList<Traffic>();
+
+    /**
+     * Getter for scheduler
+     */
+    public String getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Creates the scheduler the scenario asks for
+     *
+     * @return A new scheduler
+     */
+    public Scheduler createScheduler() {
+        if (this.cluster != null) {
+            return new DistributedScheduler();
+        }
+        if (this.scheduler == null) {
+            return Scheduler.fromSystemProperties();
+        }
+        return Scheduler.create(this.scheduler);
+    }
+
+    /**
+     * Returns the number of nodes in the scenario
+     */
+    public int getNodeCount() {
+        int count = 0;
+        for (NodeGroup group : this.nodeGroups) {
+            count += group.count;
+        }
+        return count;
+    }
+
+    /**
+     * Builds the network and schedules the workload
+     * Nothing happens till the scheduler is run. In a cluster, only the
+     * nodes this process owns are built, and only their workload is
+     * scheduled. Nodes are dealt to the processes round robin, except for
+     * router interfaces, which stay with the other interfaces of their
+     * router.
+     *
+     * @param scheduler The scheduler of the network
+     * @return The network
+     */
+    public Network build(Scheduler scheduler) {
+        int nodeCount = this.getNodeCount();
+        Network network;
+        List<Switch> switches = new ArrayList<Switch>();
+        int rank = Integer.getInteger(RANK_PROPERTY, 0);
+        if (this.cluster != null) {
+            if (!this.switches.isEmpty()) {
+                throw new IllegalArgumentException(
+                    "Switched networks cannot span a cluster");
+            }
+            network = new DistributedNetwork(NETWORK_CAPACITY,
+                                             (DistributedScheduler) scheduler,
+                                             this.cluster,
+                                             rank);
+        } else if (this.switches.isEmpty()) {
+            network = new Ethernet(NETWORK_CAPACITY, scheduler);
+        } else {
+            SwitchSpec root = this.switches.get(0);
+            SwitchedNetwork switchedNetwork =
+                new SwitchedNetwork(NETWORK_CAPACITY,
+                                    scheduler,
+                                    root.camCapacity,
+                                    root.agingTime
+                                    );
+            switches.add(switchedNetwork.getSwitches().get(0));
+            for (SwitchSpec spec : this.switches.subList(1, this.switches.size())) {
+                switches.add(switchedNetwork.addSwitch(switches.get(spec.uplink),
+                                                       spec.camCapacity,
+                                                       spec.agingTime));
+            }
+            network = switchedNetwork;
+        }
+        Map<Ipv4Address, Node> nodesByIp =
+            new HashMap<Ipv4Address, Node>(2 * nodeCount);
+        // Every node gets a generator of its own, seeded from this one
+        Random seeds = this.seed == null ? null : new Random(this.seed);
+        Map<Integer, Router> routers = new HashMap<Integer, Router>();
+        int index = 0;
+        for (NodeGroup group : this.nodeGroups) {
+            List<Node> nodes = new ArrayList<Node>(group.count);
+            int firstIp = group.firstIpv4Address.toInt();
+            long firstMac = group.firstMacAddress.toLong();
+            for (int i = 0; i < group.count; i++, index++) {
+                if (this.cluster != null &&
+                    (group.routerId == null ? index : group.routerId)
+                    % this.cluster.size() != rank) {
+                    // Keep the seeds of the nodes the same in every process
+                    if (seeds != null && group.protocol.equals("secarp")) {
+                        seeds.nextLong();
+                    }
+                    continue;
+                }
+                Ipv4Address ipv4Address = Ipv4Address.valueOf(firstIp + i);
+                MacAddress macAddress = MacAddress.valueOf(firstMac + i);
+                Node node = group.victimIpv4Address == null
+                    ? new Node(ipv4Address, macAddress)
+                    : new AttackerNode(ipv4Address,
+                                       macAddress,
+                                       group.victimIpv4Address);
+                createProtocol(group.protocol, seeds).install(node);
+                node.setVlan(group.vlan);
+                if (group.routerId != null) {
+                    routers.computeIfAbsent(group.routerId, id -> new Router())
+                        .addInterface(node, group.prefixLength);
+                } else if (group.gateway != null) {
+                    node.setGateway(group.gateway, group.prefixLength);
+                }
+                if (this.logged != null) {
+                    for (EventType eventType : EventType.values()) {
+                        node.getLogger().setEnabled(
+                            eventType, this.logged.contains(eventType));
+                    }
+                }
+                nodes.add(node);
+                nodesByIp.put(ipv4Address, node);
+            }
+            if (switches.isEmpty()) {
+                network.addNodes(nodes);
+            } else {
+                ((SwitchedNetwork) network).addNodes(
+                    nodes, switches.get(group.switchId));
+            }
+        }
+
+        // A router hands packets from one interface to another directly
+        for (Router router : routers.values()) {
+            for (Node node : router.getInterfaces()) {
+                scheduler.colocate(router.getInterfaces().get(0), node);
+            }
+        }
+
+        for (Spoof spoof : this.spoofs) {
+            Node attacker = this.find(nodesByIp, spoof.attackerIpv4Address);
+            MacAddress victimMacAddress =
+                this.findMacAddress(spoof.victimIpv4Address);
+            if (attacker == null) {
+                // Owned by another process
+                continue;
+            }
+            Packet reply = attacker.getArp() instanceof SecArp
+                ? SecArp.createReplyPacket(attacker.getMacAddress(),
+                                           spoof.claimedIpv4Address,
+                                           victimMacAddress,
+                                           spoof.victimIpv4Address,
+                                           spoof.sequenceNumber
+                                           )
+                : Arp.createReplyPacket(attacker.getMacAddress(),
+                                        spoof.claimedIpv4Address,
+                                        victimMacAddress,
+                                        spoof.victimIpv4Address
+                                        );
+            scheduler.schedule(attacker, spoof.time, () -> {
+                    attacker.sendPacket(reply, victimMacAddress);
+                });
+        }
+
+        for (Traffic traffic : this.traffic) {
+            int firstSource = traffic.firstSource.toInt();
+            int firstDestination = traffic.firstDestination.toInt();
+            for (int k = 0; k < traffic.sources; k++) {
+                Node source = this.find(nodesByIp,
+                                        Ipv4Address.valueOf(firstSource + k));
+                if (source == null) {
+                    continue;
+                }
+                Ipv4Address destination = Ipv4Address.valueOf(
+                    firstDestination + k % traffic.destinations);
+                for (int j = 0; j < traffic.count; j++) {
+                    scheduler.schedule(
+                        source,
+                        traffic.time + j * traffic.interval,
+                        () -> {
+                            source.sendPacket(new Packet(traffic.payload),
+                                              destination);
+                        });
+                }
+            }
+        }
+        return network;
+    }
+
+    /**
+     * Checks the name of an address resolution protocol
+     *
+     * @param name One of "arp" or "secarp"
+     */
+    static void checkProtocol(String name) {
+        if (!name.equals("arp") && !name.equals("secarp")) {
+            throw new IllegalArgumentException("Unknown protocol: " + name);
+        }
+    }
+
+    /**
+     * Creates an address resolution protocol by name
+     *
+     * @param name One of "arp" or "secarp"
+     * @param seeds The seeds of the sequence numbers, null for unseeded runs
+     * @return A new protocol stack
+     */
+    private AddressResolutionProtocol createProtocol(String name,
+                                                     Random seeds) {
+        checkProtocol(name);
+        if (name.equals("arp")) {
+            return new Arp();
+        }
+        return new SecArp(this.sequenceNumberCapacity,
+                          this.arpReplyWaitTime,
+                          seeds == null ? new Random()
+                                        : new Random(seeds.nextLong())
+                          );
+    }
+
+    /**
+     * Finds the node using an IP
+     *
+     * @return The node, null if it is owned by another process
+     */
+    private Node find(Map<Ipv4Address, Node> nodesByIp,
+                      Ipv4Address ipv4Address) {
+        Node node = nodesByIp.get(ipv4Address);
+        if (node == null) {
+            // Throws unless some process owns it
+            this.findMacAddress(ipv4Address);
+        }
+        return node;
+    }
+
+    /**
+     * Finds the MAC address of the node using an IP, in any process
+     */
+    private MacAddress findMacAddress(Ipv4Address ipv4Address) {
+        for (NodeGroup group : this.nodeGroups) {
+            long offset = (ipv4Address.toInt() -
+                           group.firstIpv4Address.toInt()) & 0xFFFFFFFFL;
+            if (offset < group.count) {
+                return MacAddress.valueOf(group.firstMacAddress.toLong() +
+                                          offset);
+            }
+        }
+        throw new IllegalArgumentException("No node uses " + ipv4Address);
+    }
+}
@@ -0,0 +1,322 @@
+package com.secarp.scenario;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.common.EventType;
+
+/**
+ * Reads a scenario from its text form
+ * One directive per line, blank lines and lines starting with # are
+ * skipped. Times are in milliseconds, ranges of IPs are written first..last.
+ * A keyword a directive does not accept is an error.
+ *
+ * scheduler event|sharded|thread|mailbox|virtual
+ * log all|none|event_type,event_type...
+ * secarp [capacity sequence-numbers] [wait reply-wait-time]
+ * seed n
+ * cluster host:port host:port...
+ * switch [uplink switch-id] [cam entries] [aging time]
+ * nodes count ip first-ip mac first-mac protocol arp|secarp
+ *       [switch switch-id] [vlan id] [gateway ip prefix length]
+ * attackers count ip first-ip mac first-mac protocol arp|secarp victim ip
+ *           [switch switch-id] [vlan id] [gateway ip prefix length]
+ * router router-id ip ip mac mac protocol arp|secarp vlan id prefix length
+ *        [switch switch-id]
+ * spoof at time from attacker-ip as claimed-ip to victim-ip [sequence n]
+ * send at time from ip[..ip] to ip[..ip] [count n every interval]
+ *      [payload text till the end of the line]
+ *
+ * Switches get ids in the order they are defined, from 0. Without any, the
+ * nodes share a single Ethernet segment.
+ * Each router line adds an interface to the router of that id, serving the
+ * subnet of its IP in its VLAN. Nodes send packets outside their subnet to
+ * their gateway.
+ * A cluster spreads the nodes over one process per address listed, each
+ * run with the secarp.rank system property set to its position in the list.
+ */
+public class ScenarioLoader {
+    // Payload of data packets when the scenario does not give one
+    private static final String DEFAULT_PAYLOAD = "test-payload";
+
+    /**
+     * Loads a scenario from a file
+     *
+     * @param path The path of the file
+     * @return The scenario
+     */
+    public static Scenario load(String path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(Paths.get(path),
+                                                     StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Parses a scenario
+     *
+     * @param reader The text of the scenario
+     * @return The scenario
+     */
+    public static Scenario parse(Reader reader) throws IOException {
+        Scenario scenario = new Scenario();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                parseLine(scenario, line);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(
+                    "Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return scenario;
+    }
+
+    /**
+     * Parses a directive into the scenario
+     */
+    private static void parseLine(Scenario scenario, String line) {
+        String payload = null;
+        int payloadIndex = line.indexOf(" payload ");
+        if (payloadIndex >= 0) {
+            payload = line.substring(payloadIndex + " payload ".length());
+            line = line.substring(0, payloadIndex);
+        }
+        String[] words = line.split("\\s+");
+        switch (words[0]) {
+        case "scheduler":
+            scenario.scheduler = words[1];
+            break;
+        case "log":
+            scenario.logged = new ArrayList<EventType>();
+            if (words[1].equals("all")) {
+                for (EventType eventType : EventType.values()) {
+                    scenario.logged.add(eventType);
+                }
+            } else if (!words[1].equals("none")) {
+                for (String eventType : words[1].split(",")) {
+                    scenario.logged.add(
+                        EventType.valueOf(eventType.toUpperCase()));
+                }
+            }
+            break;
+        case "secarp": {
+            Map<String, String> options =
+                options(words, 1, "capacity", "wait");
+            if (options.containsKey("capacity")) {
+                scenario.sequenceNumberCapacity =
+                    Integer.parseInt(options.get("capacity"));
+            }
+            if (options.containsKey("wait")) {
+                scenario.arpReplyWaitTime = Integer.parseInt(options.get("wait"));
+            }
+            break;
+        }
+        case "switch": {
+            Map<String, String> options =
+                options(words, 1, "uplink", "cam", "aging");
+            Scenario.SwitchSpec spec = new Scenario.SwitchSpec();
+            if (options.containsKey("uplink")) {
+                if (scenario.switches.isEmpty()) {
+                    throw new IllegalArgumentException(
+                        "The first switch has no uplink");
+                }
+                spec.uplink = Integer.parseInt(options.get("uplink"));
+                if (spec.uplink >= scenario.switches.size()) {
+                    throw new IllegalArgumentException(
+                        "Unknown switch: " + spec.uplink);
+                }
+            }
+            if (options.containsKey("cam")) {
+                spec.camCapacity = Integer.parseInt(options.get("cam"));
+            }
+            if (options.containsKey("aging")) {
+                spec.agingTime = Long.parseLong(options.get("aging"));
+            }
+            scenario.switches.add(spec);
+            break;
+        }
+        case "seed":
+            scenario.seed = Long.parseLong(words[1]);
+            break;
+        case "cluster":
+            if (words.length < 2) {
+                throw new IllegalArgumentException("Missing cluster members");
+            }
+            scenario.cluster = new ArrayList<InetSocketAddress>();
+            for (int i = 1; i < words.length; i++) {
+                int colon = words[i].lastIndexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException(
+                        "Missing port: " + words[i]);
+                }
+                scenario.cluster.add(new InetSocketAddress(
+                    words[i].substring(0, colon),
+                    Integer.parseInt(words[i].substring(colon + 1))));
+            }
+            break;
+        case "nodes":
+        case "attackers":
+        case "router": {
+            Map<String, String> options;
+            if (words[0].equals("router")) {
+                options = options(words, 2, "ip", "mac", "protocol", "vlan",
+                                  "prefix", "switch");
+            } else if (words[0].equals("attackers")) {
+                options = options(words, 2, "ip", "mac", "protocol", "victim",
+                                  "switch", "vlan", "gateway", "prefix");
+            } else {
+                options = options(words, 2, "ip", "mac", "protocol",
+                                  "switch", "vlan", "gateway", "prefix");
+            }
+            Scenario.NodeGroup group = new Scenario.NodeGroup();
+            if (words[0].equals("router")) {
+                group.count = 1;
+                group.routerId = Integer.valueOf(words[1]);
+                group.prefixLength =
+                    Integer.parseInt(require(options, "prefix"));
+            } else {
+                group.count = Integer.parseInt(words[1]);
+                if (options.containsKey("gateway")) {
+                    group.gateway =
+                        Ipv4Address.valueOf(options.get("gateway"));
+                    group.prefixLength =
+                        Integer.parseInt(require(options, "prefix"));
+                }
+            }
+            if (options.containsKey("vlan")) {
+                group.vlan = Integer.parseInt(options.get("vlan"));
+            }
+            group.firstIpv4Address = Ipv4Address.valueOf(require(options, "ip"));
+            group.firstMacAddress = MacAddress.valueOf(require(options, "mac"));
+            group.protocol = require(options, "protocol");
+            Scenario.checkProtocol(group.protocol);
+            group.switchId = Integer.parseInt(options.getOrDefault("switch", "0"));
+            if (group.switchId != 0 &&
+                group.switchId >= scenario.switches.size()) {
+                throw new IllegalArgumentException(
+                    "Unknown switch: " + group.switchId);
+            }
+            if (words[0].equals("attackers")) {
+                group.victimIpv4Address =
+                    Ipv4Address.valueOf(require(options, "victim"));
+            }
+            scenario.nodeGroups.add(group);
+            break;
+        }
+        case "spoof": {
+            Map<String, String> options =
+                options(words, 1, "at", "from", "as", "to", "sequence");
+            Scenario.Spoof spoof = new Scenario.Spoof();
+            spoof.time = Long.parseLong(require(options, "at"));
+            spoof.attackerIpv4Address =
+                Ipv4Address.valueOf(require(options, "from"));
+            spoof.claimedIpv4Address =
+                Ipv4Address.valueOf(require(options, "as"));
+            spoof.victimIpv4Address =
+                Ipv4Address.valueOf(require(options, "to"));
+            spoof.sequenceNumber =
+                Integer.parseInt(options.getOrDefault("sequence", "0"));
+            scenario.spoofs.add(spoof);
+            break;
+        }
+        case "send": {
+            Map<String, String> options =
+                options(words, 1, "at", "from", "to", "count", "every");
+            Scenario.Traffic traffic = new Scenario.Traffic();
+            traffic.time = Long.parseLong(require(options, "at"));
+            Ipv4Address[] sources = range(require(options, "from"));
+            traffic.firstSource = sources[0];
+            traffic.sources = sources[1].toInt() - sources[0].toInt() + 1;
+            Ipv4Address[] destinations = range(require(options, "to"));
+            traffic.firstDestination = destinations[0];
+            traffic.destinations =
+                destinations[1].toInt() - destinations[0].toInt() + 1;
+            traffic.count = Integer.parseInt(options.getOrDefault("count", "1"));
+            traffic.interval = Long.parseLong(options.getOrDefault("every", "0"));
+            traffic.payload = (payload == null ? DEFAULT_PAYLOAD : payload)
+                .getBytes(StandardCharsets.UTF_8);
+            if (traffic.sources < 1 || traffic.destinations < 1) {
+                throw new IllegalArgumentException("Empty range of IPs");
+            }
+            scenario.traffic.add(traffic);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException(
+                "Unknown directive: " + words[0]);
+        }
+    }
+
+    /**
+     * Reads the keyword value pairs of a directive
+     *
+     * @param words The words of the directive
+     * @param start The index of the first keyword
+     * @param keywords The keywords the directive accepts
+     * @return The values by keyword
+     */
+    private static Map<String, String> options(String[] words,
+                                               int start,
+                                               String... keywords) {
+        if ((words.length - start) % 2 != 0) {
+            throw new IllegalArgumentException(
+                "Missing value for " + words[words.length - 1]);
+        }
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = start; i < words.length; i += 2) {
+            if (!Arrays.asList(keywords).contains(words[i])) {
+                throw new IllegalArgumentException(
+                    "Unknown option for " + words[0] + ": " + words[i]);
+            }
+            options.put(words[i], words[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Returns the value of a keyword that must be present
+     */
+    private static String require(Map<String, String> options, String keyword) {
+        String value = options.get(keyword);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + keyword);
+        }
+        return value;
+    }
+
+    /**
+     * Parses an IP, or a range of IPs written first..last
+     *
+     * @return The first and the last IP of the range
+     */
+    private static Ipv4Address[] range(String text) {
+        int separator = text.indexOf("..");
+        if (separator < 0) {
+            Ipv4Address ipv4Address = Ipv4Address.valueOf(text);
+            return new Ipv4Address[] {ipv4Address, ipv4Address};
+        }
+        return new Ipv4Address[] {
+            Ipv4Address.valueOf(text.substring(0, separator)),
+            Ipv4Address.valueOf(text.substring(separator + 2))
+        };
+    }
+}
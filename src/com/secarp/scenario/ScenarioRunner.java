@@ -0,0 +1,71 @@
+package com.secarp.scenario;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.secarp.common.Logger;
+import com.secarp.device.Node;
+import com.secarp.network.DistributedNetwork;
+import com.secarp.network.Network;
+import com.secarp.network.Switch;
+import com.secarp.network.SwitchedNetwork;
+import com.secarp.scheduler.Scheduler;
+
+/**
+ * Runs a scenario file and prints the totals of the metrics of all the
+ * nodes
+ * In a cluster, every process prints the totals of its own nodes.
+ * Usage: ScenarioRunner path
+ */
+public class ScenarioRunner {
+    public static void main(String args[]) throws Exception {
+        Scenario scenario = ScenarioLoader.load(args[0]);
+        Scheduler scheduler = scenario.createScheduler();
+
+        long startTime = System.nanoTime();
+        Network network = scenario.build(scheduler);
+        long buildTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        scheduler.run();
+        long runTime = System.nanoTime() - startTime;
+        network.finish();
+        Logger.flush();
+
+        Map<String, Long> totals = new TreeMap<String, Long>();
+        for (Node node : network.getNodes()) {
+            for (Map.Entry<String, Long> entry :
+                     node.getMetricsSnapshot().entrySet()) {
+                if (!entry.getKey().startsWith("ResolutionLatency")) {
+                    totals.merge(entry.getKey(), entry.getValue(), Long::sum);
+                }
+            }
+        }
+        if (network instanceof DistributedNetwork) {
+            DistributedNetwork distributedNetwork = (DistributedNetwork) network;
+            System.out.println("Process " + distributedNetwork.getRank() +
+                               " of " + distributedNetwork.getSize());
+        }
+        System.out.println("Nodes: " + network.getNodes().size());
+        System.out.println("Built in " + buildTime / 1000000 + "ms, ran in " +
+                           runTime / 1000000 + "ms");
+        System.out.println("Simulated time: " +
+                           scheduler.getCurrentTimeInMillis() + "ms");
+        for (Map.Entry<String, Long> entry : totals.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+        if (network instanceof SwitchedNetwork) {
+            for (Switch networkSwitch :
+                     ((SwitchedNetwork) network).getSwitches()) {
+                System.out.println(
+                    "Switch " + networkSwitch.getId() +
+                    ": Forwarded: " + networkSwitch.getForwarded() +
+                    ", Flooded: " + networkSwitch.getFlooded() +
+                    ", Broadcasts: " + networkSwitch.getBroadcasts() +
+                    ", CamEntries: " + networkSwitch.getCamTable().size() +
+                    ", CamOverflows: " +
+                    networkSwitch.getCamTable().getOverflows());
+            }
+        }
+    }
+}
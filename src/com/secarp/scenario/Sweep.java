@@ -0,0 +1,289 @@
+package com.secarp.scenario;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.common.EventType;
+import com.secarp.device.Node;
+import com.secarp.network.Network;
+import com.secarp.protocol.secarp.SecArp;
+import com.secarp.scheduler.EventScheduler;
+
+/**
+ * Runs many independent trials of a SecArp attack for every point of a
+ * parameter grid, in parallel on a fork join pool
+ *
+ * In every trial, the first node resolves the IP of the second one while the
+ * attackers answer its requests with their own MAC, and optionally guess its
+ * sequence numbers with forged replies. Each trial has a simulation of its
+ * own, on an event scheduler, and a seed derived from the seed of the sweep,
+ * so that a sweep gives the same statistics on every run.
+ */
+public class Sweep {
+    // The first addresses of the nodes and of the attackers
+    private static final Ipv4Address NODE_IP = Ipv4Address.valueOf("10.0.0.1");
+    private static final MacAddress NODE_MAC =
+        MacAddress.valueOf("02:00:00:00:00:01");
+    private static final Ipv4Address ATTACKER_IP =
+        Ipv4Address.valueOf("10.1.0.1");
+    private static final MacAddress ATTACKER_MAC =
+        MacAddress.valueOf("02:00:01:00:00:01");
+
+    // The points of the grid
+    private List<SweepPoint> points;
+
+    // Number of trials of each point
+    private int trials;
+
+    // Number of forged replies each attacker sends with a guessed sequence
+    // number
+    private int guesses;
+
+    // The seed the seeds of the trials are derived from
+    private long seed;
+
+    /**
+     * Constructor function
+     *
+     * @param points The points of the grid
+     * @param trials Number of trials of each point
+     * @param guesses Number of forged replies of each attacker
+     * @param seed The seed of the sweep
+     */
+    public Sweep(List<SweepPoint> points, int trials, int guesses, long seed) {
+        this.points = points;
+        this.trials = trials;
+        this.guesses = guesses;
+        this.seed = seed;
+    }
+
+    /**
+     * Getter for points
+     */
+    public List<SweepPoint> getPoints() {
+        return this.points;
+    }
+
+    /**
+     * Runs all the trials, and returns once they are over
+     *
+     * @param pool The pool running the trials
+     */
+    public void run(ForkJoinPool pool) {
+        pool.invoke(new Trials(0, this.points.size() * this.trials));
+    }
+
+    /**
+     * A range of trials, split in halves till small enough to run
+     */
+    private class Trials extends RecursiveAction {
+        // Tasks are never serialized, the field only declares the version
+        private static final long serialVersionUID = 1L;
+
+        // Ranges with at most this many trials are run by a single task
+        private static final int THRESHOLD = 4;
+
+        private int from;
+        private int to;
+
+        Trials(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                for (int i = this.from; i < this.to; i++) {
+                    runTrial(i);
+                }
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Trials(this.from, middle),
+                      new Trials(middle, this.to));
+        }
+    }
+
+    /**
+     * Runs a trial, and records its outcome in its point
+     *
+     * @param index The index of the trial, among those of all the points
+     */
+    private void runTrial(int index) {
+        SweepPoint point = this.points.get(index / this.trials);
+        // Neighbouring indexes get far apart seeds
+        long trialSeed = this.seed ^ (index * 0x9E3779B97F4A7C15L);
+        Random random = new Random(trialSeed);
+        Scenario scenario = createScenario(point, random);
+
+        EventScheduler scheduler = new EventScheduler();
+        Network network = scenario.build(scheduler);
+        // Trials are not traced, their node ids would clash
+        network.setTraceRecorder(null);
+        Node victim = network.getNodes().get(0);
+        Ipv4Address target = network.getNodes().get(1).getIpv4Address();
+        MacAddress[] resolved = new MacAddress[1];
+        long[] latency = new long[1];
+        scheduler.schedule(victim, 0, () -> {
+                victim.getArp().getMacAddressAsync(target)
+                    .thenAccept(macAddress -> {
+                            resolved[0] = macAddress;
+                            latency[0] = scheduler.getCurrentTimeInMillis();
+                        });
+            });
+        scheduler.run();
+        network.finish();
+
+        boolean attacked = resolved[0] != null &&
+            resolved[0].toLong() >= ATTACKER_MAC.toLong() &&
+            resolved[0].toLong() < ATTACKER_MAC.toLong() + point.getAttackers();
+        point.record(attacked,
+                     resolved[0] != null,
+                     victim.getArp().getMetrics().getConflicts() > 0,
+                     latency[0]
+                     );
+    }
+
+    /**
+     * Creates the scenario of a trial
+     *
+     * @param point The parameters of the trial
+     * @param random The source of the seeds and guesses of the trial
+     * @return The scenario
+     */
+    private Scenario createScenario(SweepPoint point, Random random) {
+        Scenario scenario = new Scenario();
+        scenario.logged = new ArrayList<EventType>();
+        scenario.sequenceNumberCapacity = point.getSequenceNumberCapacity();
+        scenario.arpReplyWaitTime = point.getArpReplyWaitTime();
+        scenario.seed = random.nextLong();
+
+        Scenario.NodeGroup nodes = new Scenario.NodeGroup();
+        nodes.count = point.getNodes();
+        nodes.firstIpv4Address = NODE_IP;
+        nodes.firstMacAddress = NODE_MAC;
+        nodes.protocol = "secarp";
+        scenario.nodeGroups.add(nodes);
+
+        Scenario.NodeGroup attackers = new Scenario.NodeGroup();
+        attackers.count = point.getAttackers();
+        attackers.firstIpv4Address = ATTACKER_IP;
+        attackers.firstMacAddress = ATTACKER_MAC;
+        attackers.protocol = "secarp";
+        attackers.victimIpv4Address = NODE_IP;
+        scenario.nodeGroups.add(attackers);
+
+        // The guesses leave as the request does, so that they reach the
+        // victim while it collects replies
+        for (int i = 0; i < point.getAttackers(); i++) {
+            for (int j = 0; j < this.guesses; j++) {
+                Scenario.Spoof spoof = new Scenario.Spoof();
+                spoof.attackerIpv4Address =
+                    Ipv4Address.valueOf(ATTACKER_IP.toInt() + i);
+                spoof.claimedIpv4Address =
+                    Ipv4Address.valueOf(NODE_IP.toInt() + 1);
+                spoof.victimIpv4Address = NODE_IP;
+                spoof.sequenceNumber =
+                    random.nextInt(point.getSequenceNumberCapacity());
+                scenario.spoofs.add(spoof);
+            }
+        }
+        return scenario;
+    }
+
+    /**
+     * Runs a sweep and prints the statistics of every point as comma
+     * separated values
+     * Usage: Sweep [-capacity n,n...] [-wait ms,ms...] [-nodes n,n...]
+     * [-attackers n,n...] [-guesses n] [-trials n] [-seed n]
+     * [-parallelism n]
+     */
+    public static void main(String args[]) {
+        int[] capacities = {SecArp.SEQUENCE_NUMBER_CAPACITY};
+        int[] waits = {SecArp.ARP_REPLY_WAIT_TIME};
+        int[] nodeCounts = {4};
+        int[] attackerCounts = {1};
+        int guesses = 0;
+        int trials = 100;
+        long seed = 0;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+            case "-capacity":
+                capacities = parseList(args[i + 1]);
+                break;
+            case "-wait":
+                waits = parseList(args[i + 1]);
+                break;
+            case "-nodes":
+                nodeCounts = parseList(args[i + 1]);
+                break;
+            case "-attackers":
+                attackerCounts = parseList(args[i + 1]);
+                break;
+            case "-guesses":
+                guesses = Integer.parseInt(args[i + 1]);
+                break;
+            case "-trials":
+                trials = Integer.parseInt(args[i + 1]);
+                break;
+            case "-seed":
+                seed = Long.parseLong(args[i + 1]);
+                break;
+            case "-parallelism":
+                parallelism = Integer.parseInt(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        List<SweepPoint> points = new ArrayList<SweepPoint>();
+        for (int capacity : capacities) {
+            for (int wait : waits) {
+                for (int nodes : nodeCounts) {
+                    for (int attackers : attackerCounts) {
+                        points.add(new SweepPoint(capacity,
+                                                  wait,
+                                                  nodes,
+                                                  attackers));
+                    }
+                }
+            }
+        }
+        Sweep sweep = new Sweep(points, trials, guesses, seed);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long startTime = System.nanoTime();
+        try {
+            sweep.run(pool);
+        } finally {
+            pool.shutdown();
+        }
+        long runTime = System.nanoTime() - startTime;
+
+        System.out.println(SweepPoint.header());
+        for (SweepPoint point : points) {
+            System.out.println(point);
+        }
+        System.err.println(points.size() * trials + " trials in " +
+                           runTime / 1000000 + "ms");
+    }
+
+    /**
+     * Parses a comma separated list of numbers
+     */
+    private static int[] parseList(String text) {
+        String[] values = text.split(",");
+        int[] list = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            list[i] = Integer.parseInt(values[i]);
+        }
+        return list;
+    }
+}
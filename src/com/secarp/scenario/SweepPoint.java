@@ -0,0 +1,165 @@
+package com.secarp.scenario;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.secarp.metrics.Histogram;
+
+/**
+ * A point of a parameter sweep, with the statistics of its trials
+ * Trials running in parallel record their outcome concurrently
+ */
+public class SweepPoint {
+    // The parameters of the point
+    private final int sequenceNumberCapacity;
+    private final int arpReplyWaitTime;
+    private final int nodes;
+    private final int attackers;
+
+    // Trials run, and those in which the victim resolved an attacker's MAC
+    private final LongAdder trials = new LongAdder();
+    private final LongAdder attacks = new LongAdder();
+
+    // Trials in which the victim could not resolve the IP at all
+    private final LongAdder unresolved = new LongAdder();
+
+    // Trials in which the victim saw conflicting replies
+    private final LongAdder conflicts = new LongAdder();
+
+    // Time taken by the resolution of the victim, in milliseconds
+    private final Histogram latency = new Histogram();
+
+    /**
+     * Constructor function
+     */
+    public SweepPoint(int sequenceNumberCapacity,
+                      int arpReplyWaitTime,
+                      int nodes,
+                      int attackers) {
+        if (nodes < 2) {
+            throw new IllegalArgumentException(
+                "A victim and its target need 2 nodes");
+        }
+        this.sequenceNumberCapacity = sequenceNumberCapacity;
+        this.arpReplyWaitTime = arpReplyWaitTime;
+        this.nodes = nodes;
+        this.attackers = attackers;
+    }
+
+    /**
+     * Getter for sequence number capacity
+     */
+    public int getSequenceNumberCapacity() {
+        return this.sequenceNumberCapacity;
+    }
+
+    /**
+     * Getter for arp reply wait time
+     */
+    public int getArpReplyWaitTime() {
+        return this.arpReplyWaitTime;
+    }
+
+    /**
+     * Getter for nodes
+     */
+    public int getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Getter for attackers
+     */
+    public int getAttackers() {
+        return this.attackers;
+    }
+
+    /**
+     * Records the outcome of a trial
+     *
+     * @param attacked Whether the victim resolved an attacker's MAC
+     * @param resolved Whether the victim resolved a MAC at all
+     * @param conflict Whether the victim saw conflicting replies
+     * @param latency The time the resolution took in milliseconds
+     */
+    public void record(boolean attacked,
+                       boolean resolved,
+                       boolean conflict,
+                       long latency) {
+        this.trials.increment();
+        if (attacked) {
+            this.attacks.increment();
+        }
+        if (!resolved) {
+            this.unresolved.increment();
+        }
+        if (conflict) {
+            this.conflicts.increment();
+        }
+        this.latency.record(latency);
+    }
+
+    /**
+     * Returns the fraction of the trials in which the attack succeeded
+     */
+    public double getAttackSuccessRate() {
+        return rate(this.attacks);
+    }
+
+    /**
+     * Returns the fraction of the trials in which nothing was resolved
+     */
+    public double getUnresolvedRate() {
+        return rate(this.unresolved);
+    }
+
+    /**
+     * Returns the fraction of the trials with conflicting replies
+     */
+    public double getConflictRate() {
+        return rate(this.conflicts);
+    }
+
+    /**
+     * Getter for latency
+     */
+    public Histogram getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Returns the names of the columns of toString
+     */
+    public static String header() {
+        return "capacity,wait,nodes,attackers,trials,attack_success_rate," +
+            "unresolved_rate,conflict_rate,latency_mean,latency_p50," +
+            "latency_p99";
+    }
+
+    /**
+     * Returns the parameters and the statistics as comma separated values
+     */
+    @Override
+    public String toString() {
+        return String.format("%d,%d,%d,%d,%d,%.4f,%.4f,%.4f,%.1f,%d,%d",
+                             this.sequenceNumberCapacity,
+                             this.arpReplyWaitTime,
+                             this.nodes,
+                             this.attackers,
+                             this.trials.sum(),
+                             this.getAttackSuccessRate(),
+                             this.getUnresolvedRate(),
+                             this.getConflictRate(),
+                             this.latency.getMean(),
+                             this.latency.getValueAtPercentile(50),
+                             this.latency.getValueAtPercentile(99)
+                             );
+    }
+
+    /**
+     * Returns a count as a fraction of the trials
+     */
+    private double rate(LongAdder count) {
+        long trials = this.trials.sum();
+        return trials == 0 ? 0 : (double)count.sum() / trials;
+    }
+}
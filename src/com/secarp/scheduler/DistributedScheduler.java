@@ -0,0 +1,61 @@
+package com.secarp.scheduler;
+
+import com.secarp.device.Node;
+
+/**
+ * The discrete event scheduler of one of several processes simulating a
+ * network together
+ * The processes advance in windows as long as the transmission delay of a
+ * node, the least delay with which a frame put on the link by a node of one
+ * process reaches a node of another. In between windows a coordinator
+ * hands the frames over and agrees with the other processes on where the
+ * next window starts.
+ */
+public class DistributedScheduler extends EventScheduler {
+    /**
+     * Keeps the clocks of the processes in step
+     */
+    public interface Coordinator {
+        /**
+         * Called in between windows, once all the events of the last one
+         * have been processed
+         * Hands the frames sent during the window over to the other
+         * processes, schedules those they sent, and returns the time of the
+         * earliest pending event across all the processes.
+         *
+         * @param nextTime The time of the earliest pending event of this
+         * process, Long.MAX_VALUE if none is pending
+         * @return The time the next window starts at, Long.MAX_VALUE once
+         * no process has anything left to do
+         */
+        long synchronize(long nextTime);
+    }
+
+    // The length of a window in milliseconds
+    private static final long LOOKAHEAD = Node.TRANSMISSION_DELAY;
+
+    // Coordinates the windows with the other processes
+    private Coordinator coordinator;
+
+    /**
+     * Setter for coordinator
+     */
+    public void setCoordinator(Coordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Processes windows of events until no process has any left
+     */
+    @Override
+    public void run() {
+        if (this.coordinator == null) {
+            throw new IllegalStateException("No coordinator set");
+        }
+        long startTime = this.coordinator.synchronize(this.getNextEventTime());
+        while (startTime != Long.MAX_VALUE) {
+            this.runUntil(startTime + LOOKAHEAD);
+            startTime = this.coordinator.synchronize(this.getNextEventTime());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.secarp.scheduler;
+
+/**
+ * A task a scheduler may drop instead of running when its node falls
+ * behind, like the delivery of a packet to a full receive queue
+ */
+public interface DroppableTask extends Runnable {
+    /**
+     * Checks whether the task may be dropped
+     *
+     * @return Whether the task may be dropped
+     */
+    public boolean isDroppable();
+
+    /**
+     * Releases whatever the task holds, without running it
+     */
+    public void drop();
+}
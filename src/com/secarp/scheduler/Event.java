@@ -0,0 +1,96 @@
+package com.secarp.scheduler;
+
+import com.secarp.device.Node;
+
+/**
+ * A single event in the event queue of a discrete event simulation
+ * Events are ordered by time, ties are broken by the node whose task
+ * scheduled them and then by the order in which that node scheduled them.
+ * Unlike a global scheduling order, this key does not depend on how the
+ * tasks of different nodes interleave, so sequential and sharded runs
+ * process the events of each node in the same order.
+ */
+public class Event implements Comparable<Event> {
+    // The simulated time, in milliseconds, at which the event occurs
+    private long time;
+
+    // The id of the node whose task scheduled the event, -1 if it was
+    // scheduled from outside any task
+    private int source;
+
+    // The order in which the source scheduled the event
+    private long sequence;
+
+    // The node the event belongs to
+    private Node node;
+
+    // The task to run
+    private Runnable task;
+
+    /**
+     * Constructor function
+     */
+    public Event(long time,
+                 int source,
+                 long sequence,
+                 Node node,
+                 Runnable task) {
+        this.time = time;
+        this.source = source;
+        this.sequence = sequence;
+        this.node = node;
+        this.task = task;
+    }
+
+    /**
+     * Reuses the event for another task, once the task it held has run
+     */
+    void reset(long time,
+               int source,
+               long sequence,
+               Node node,
+               Runnable task) {
+        this.time = time;
+        this.source = source;
+        this.sequence = sequence;
+        this.node = node;
+        this.task = task;
+    }
+
+    /**
+     * Getter functions
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    public int getSource() {
+        return this.source;
+    }
+
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    public Node getNode() {
+        return this.node;
+    }
+
+    public Runnable getTask() {
+        return this.task;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(Event event) {
+        if (this.time != event.time) {
+            return Long.compare(this.time, event.time);
+        }
+        if (this.source != event.source) {
+            return Integer.compare(this.source, event.source);
+        }
+        return Long.compare(this.sequence, event.sequence);
+    }
+}
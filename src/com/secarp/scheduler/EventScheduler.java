@@ -0,0 +1,134 @@
+package com.secarp.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+import com.secarp.common.Timer;
+import com.secarp.device.Node;
+
+/**
+ * A discrete event scheduler with a simulated clock
+ * All tasks run one after the other on the thread calling run(), and the
+ * clock jumps straight to the time of the next event instead of sleeping.
+ * Therefore a simulation runs as fast as the CPU allows.
+ *
+ * Tasks must not block, and the scheduler must only be used from the thread
+ * that runs it.
+ */
+public class EventScheduler extends Scheduler {
+    // The number of processed events kept for reuse
+    private static final int FREE_EVENTS_CAPACITY = 4096;
+
+    // The pending events, ordered by time
+    private PriorityQueue<Event> events;
+
+    // Processed events, reused for new ones
+    private ArrayDeque<Event> freeEvents;
+
+    // The current simulated time in milliseconds
+    private long currentTime;
+
+    // The number of events scheduled so far by each node
+    private SourceSequences sequences;
+
+    // The id of the node whose task is running, -1 outside of tasks
+    private int currentSource;
+
+    /**
+     * Constructor function
+     */
+    public EventScheduler() {
+        this.events = new PriorityQueue<Event>();
+        this.freeEvents = new ArrayDeque<Event>();
+        this.currentTime = 0;
+        this.sequences = new SourceSequences();
+        this.currentSource = -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentTimeInMillis() {
+        return this.currentTime;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void schedule(Node node, long delay, Runnable task) {
+        long time = this.currentTime + delay;
+        long sequence = this.sequences.next(this.currentSource);
+        Event event = this.freeEvents.pollFirst();
+        if (event == null) {
+            event = new Event(time, this.currentSource, sequence, node, task);
+        } else {
+            event.reset(time, this.currentSource, sequence, node, task);
+        }
+        this.events.add(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsBlocking() {
+        return false;
+    }
+
+    /**
+     * Processes events in order of time until the event queue is empty
+     * While running, Timer reports the simulated time on this thread
+     */
+    @Override
+    public void run() {
+        this.runUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * Processes events in order of time up to, but excluding, a time
+     * While running, Timer reports the simulated time on this thread
+     *
+     * @param endTime The time in milliseconds at which to stop
+     */
+    public void runUntil(long endTime) {
+        Timer.setScheduler(this);
+        try {
+            Event event;
+            while ((event = this.events.peek()) != null &&
+                   event.getTime() < endTime) {
+                this.events.poll();
+                this.currentTime = event.getTime();
+                this.currentSource = SourceSequences.sourceOf(event.getNode());
+                event.getTask().run();
+                if (this.freeEvents.size() < FREE_EVENTS_CAPACITY) {
+                    event.reset(0, 0, 0, null, null);
+                    this.freeEvents.addFirst(event);
+                }
+            }
+        } finally {
+            this.currentSource = -1;
+            Timer.setScheduler(null);
+        }
+    }
+
+    /**
+     * Returns the time of the earliest pending event
+     *
+     * @return The time in milliseconds, Long.MAX_VALUE if none is pending
+     */
+    public long getNextEventTime() {
+        Event event = this.events.peek();
+        return event == null ? Long.MAX_VALUE : event.getTime();
+    }
+
+    /**
+     * Returns the number of events waiting to be processed
+     *
+     * @return The number of pending events
+     */
+    public int getPendingEvents() {
+        return this.events.size();
+    }
+}
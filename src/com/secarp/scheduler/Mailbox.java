@@ -0,0 +1,126 @@
+package com.secarp.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.secarp.common.CircularQueue;
+
+/**
+ * A queue of tasks belonging to a single node
+ * At most one worker drains a mailbox at a time, so the tasks of a node run
+ * one after the other, in the order they were posted.
+ *
+ * The tasks are held in a bounded ring. Droppable tasks, the deliveries of
+ * packets, are refused once the ring is three quarters full, which keeps
+ * the rest of it for the other tasks. Those, timers among them, release
+ * resources and complete futures that others wait on, so they are never
+ * refused: the few posted while the ring is full wait in an overflow queue
+ * and move into the ring as it drains. Incoming traffic therefore never
+ * grows a mailbox beyond its ring.
+ */
+public class Mailbox implements Runnable {
+    // Maximum number of tasks run before handing the worker to another node
+    private static final int BATCH_SIZE = 64;
+
+    // The queued tasks
+    private CircularQueue<Runnable> tasks;
+
+    // The number of tasks in the ring beyond which droppable ones are refused
+    private int droppableCapacity;
+
+    // The tasks that may not be dropped posted while the ring was full,
+    // oldest first
+    private ArrayDeque<Runnable> overflow;
+
+    // The workers draining the mailbox
+    private Executor workers;
+
+    // Whether the mailbox is queued on, or being drained by, a worker
+    private AtomicBoolean scheduled;
+
+    /**
+     * Constructor function
+     *
+     * @param capacity The number of tasks in the ring
+     * @param workers The workers draining the mailbox
+     */
+    public Mailbox(int capacity, Executor workers) {
+        this.tasks = new CircularQueue<Runnable>(capacity);
+        this.droppableCapacity = capacity - capacity / 4;
+        this.overflow = new ArrayDeque<Runnable>();
+        this.workers = workers;
+        this.scheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Posts a task to the mailbox
+     *
+     * @param task The task to be run
+     * @param droppable Whether the task may be refused
+     *
+     * @return Whether the task was queued, false if it was refused
+     */
+    public boolean post(Runnable task, boolean droppable) {
+        synchronized (this.tasks) {
+            if (droppable) {
+                // The overflow only fills once the ring is full, so a task
+                // taken here never runs before an older one
+                if (this.tasks.length() >= this.droppableCapacity) {
+                    return false;
+                }
+                this.tasks.enqueue(task);
+            } else if (this.overflow.isEmpty() && !this.tasks.isFull()) {
+                this.tasks.enqueue(task);
+            } else {
+                // Tasks only go to the ring once nothing waits before them
+                this.overflow.add(task);
+            }
+        }
+        this.dispatch();
+        return true;
+    }
+
+    /**
+     * Runs a batch of queued tasks on the current worker
+     */
+    @Override
+    public void run() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Runnable task;
+            synchronized (this.tasks) {
+                task = this.tasks.dequeue();
+                if (task != null && !this.overflow.isEmpty()) {
+                    this.tasks.enqueue(this.overflow.poll());
+                }
+            }
+            if (task == null) {
+                break;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // A failing task must not take the node down with it
+                e.printStackTrace();
+            }
+        }
+        this.scheduled.set(false);
+        // Tasks may have been posted after the last dequeue
+        boolean empty;
+        synchronized (this.tasks) {
+            empty = this.tasks.isEmpty();
+        }
+        if (!empty) {
+            this.dispatch();
+        }
+    }
+
+    /**
+     * Hands the mailbox to a worker unless one already has it
+     */
+    private void dispatch() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.workers.execute(this);
+        }
+    }
+}
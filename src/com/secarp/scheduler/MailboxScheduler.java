@@ -0,0 +1,155 @@
+package com.secarp.scheduler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.secarp.common.Timer;
+import com.secarp.device.Node;
+
+/**
+ * An actor style scheduler
+ * Every node owns a mailbox, and a fixed pool of workers drains the
+ * mailboxes. Delayed tasks wait on a single timer thread and are posted to the
+ * mailbox of their node once due. Therefore the number of threads stays fixed
+ * no matter how many packets are in flight.
+ *
+ * Mailboxes are bounded: a packet delivered to a node whose mailbox is
+ * three quarters full is dropped, like a packet arriving at a full receive
+ * queue. Other tasks, timers among them, are never dropped, see Mailbox.
+ */
+public class MailboxScheduler extends RealTimeScheduler {
+    // The capacity of the ring of the mailbox of a node
+    private int mailboxCapacity;
+
+    // The workers draining the mailboxes
+    private ExecutorService workers;
+
+    // The thread holding back delayed tasks
+    private ScheduledExecutorService timer;
+
+    // The mailbox of each node
+    private ConcurrentHashMap<Node, Mailbox> mailboxes;
+
+    // The mailbox for tasks that do not belong to any node
+    private Mailbox defaultMailbox;
+
+    // The number of tasks dropped because of a full mailbox
+    private AtomicLong droppedTasks;
+
+    /**
+     * Constructor function
+     * Uses one worker per available core
+     *
+     * @param mailboxCapacity The capacity of the ring of the mailbox of a
+     * node
+     */
+    public MailboxScheduler(int mailboxCapacity) {
+        this(Runtime.getRuntime().availableProcessors(), mailboxCapacity);
+    }
+
+    /**
+     * Constructor function
+     *
+     * @param workers The number of worker threads
+     * @param mailboxCapacity The capacity of the ring of the mailbox of a
+     * node
+     */
+    public MailboxScheduler(int workers, int mailboxCapacity) {
+        this.mailboxCapacity = mailboxCapacity;
+        this.workers = Executors.newFixedThreadPool(workers, task -> {
+                // Workers must not block, Timer refuses to sleep on them
+                Thread thread = new Thread(() -> {
+                        Timer.setScheduler(this);
+                        task.run();
+                    });
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.mailboxes = new ConcurrentHashMap<Node, Mailbox>();
+        this.defaultMailbox = new Mailbox(mailboxCapacity, this.workers);
+        this.droppedTasks = new AtomicLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void schedule(Node node, long delay, Runnable task) {
+        this.taskScheduled();
+        if (delay <= 0) {
+            this.post(node, task);
+        } else {
+            this.timer.schedule(() -> this.post(node, task),
+                                delay,
+                                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Blocking a worker would stall every node waiting for it
+     */
+    @Override
+    public boolean supportsBlocking() {
+        return false;
+    }
+
+    /**
+     * Returns the number of tasks dropped because of a full mailbox
+     *
+     * @return The number of dropped tasks
+     */
+    public long getDroppedTasks() {
+        return this.droppedTasks.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void shutdown() {
+        this.timer.shutdown();
+        this.workers.shutdown();
+    }
+
+    /**
+     * Posts a task to the mailbox of its node
+     *
+     * @param node The node the task belongs to
+     * @param task The task to be run
+     */
+    private void post(Node node, Runnable task) {
+        Mailbox mailbox = this.defaultMailbox;
+        if (node != null) {
+            mailbox = this.mailboxes.get(node);
+            if (mailbox == null) {
+                mailbox = this.mailboxes.computeIfAbsent(node, key -> {
+                        return new Mailbox(this.mailboxCapacity, this.workers);
+                    });
+            }
+        }
+        boolean droppable = task instanceof DroppableTask &&
+            ((DroppableTask)task).isDroppable();
+        boolean queued = mailbox.post(() -> {
+                try {
+                    task.run();
+                } finally {
+                    this.taskFinished();
+                }
+            }, droppable);
+        if (!queued) {
+            ((DroppableTask)task).drop();
+            this.droppedTasks.incrementAndGet();
+            this.taskFinished();
+        }
+    }
+}
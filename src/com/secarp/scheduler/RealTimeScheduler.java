@@ -0,0 +1,75 @@
+package com.secarp.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base for schedulers that run tasks concurrently against the wall clock
+ * Keeps track of the tasks that have not finished yet, so that run() can
+ * wait for the simulation to settle. The count is atomic, so scheduling and
+ * finishing a task never lock; only the task bringing it down to zero takes
+ * the monitor, to wake run().
+ */
+public abstract class RealTimeScheduler extends Scheduler {
+    // The number of scheduled tasks that have not finished yet
+    private final AtomicLong pendingTasks;
+
+    /**
+     * Constructor function
+     */
+    public RealTimeScheduler() {
+        this.pendingTasks = new AtomicLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentTimeInMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Waits till all scheduled tasks, including the ones they schedule, have
+     * finished
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            // Checked under the monitor, so a wake up cannot be missed
+            while (this.pendingTasks.get() > 0) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        this.shutdown();
+    }
+
+    /**
+     * Releases the resources held by the scheduler once run() has finished
+     */
+    protected void shutdown() {
+    }
+
+    /**
+     * Marks a task as scheduled
+     * Must be called before the task can possibly run
+     */
+    protected void taskScheduled() {
+        this.pendingTasks.incrementAndGet();
+    }
+
+    /**
+     * Marks a task as finished, or as dropped without running
+     */
+    protected void taskFinished() {
+        if (this.pendingTasks.decrementAndGet() == 0) {
+            synchronized (this) {
+                this.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.secarp.scheduler;
+
+import com.secarp.device.Node;
+
+/**
+ * An abstraction over the way tasks of the nodes in a network are executed
+ * All packet transmissions, packet handling and protocol timeouts go through
+ * the scheduler of the network
+ */
+public abstract class Scheduler {
+    // The system property selecting the scheduler at startup
+    public static final String SCHEDULER_PROPERTY = "secarp.scheduler";
+
+    // The system property setting the mailbox capacity of a node
+    public static final String MAILBOX_CAPACITY_PROPERTY =
+        "secarp.mailbox.capacity";
+
+    // The default mailbox capacity of a node
+    private static final int DEFAULT_MAILBOX_CAPACITY = 1024;
+
+    // The system property setting the number of shards of the sharded
+    // scheduler, the number of processors by default
+    public static final String SHARDS_PROPERTY = "secarp.shards";
+
+    /**
+     * Creates a scheduler by name
+     *
+     * @param name One of "event", "sharded", "thread", "mailbox" or
+     * "virtual"
+     *
+     * @return A new scheduler
+     */
+    public static Scheduler create(String name) {
+        switch (name) {
+        case "event":
+            return new EventScheduler();
+        case "sharded":
+            return new ShardedEventScheduler(
+                Integer.getInteger(SHARDS_PROPERTY,
+                                   Runtime.getRuntime().availableProcessors()));
+        case "thread":
+            return new ThreadScheduler();
+        case "mailbox":
+            return new MailboxScheduler(
+                Integer.getInteger(MAILBOX_CAPACITY_PROPERTY,
+                                   DEFAULT_MAILBOX_CAPACITY));
+        case "virtual":
+            return new VirtualThreadScheduler();
+        default:
+            throw new IllegalArgumentException("Unknown scheduler: " + name);
+        }
+    }
+
+    /**
+     * Creates the scheduler selected by the secarp.scheduler system property
+     * Defaults to the discrete event scheduler
+     *
+     * @return A new scheduler
+     */
+    public static Scheduler fromSystemProperties() {
+        return create(System.getProperty(SCHEDULER_PROPERTY, "event"));
+    }
+    /**
+     * Returns the current time of the scheduler
+     *
+     * @return The current time in milliseconds
+     */
+    public abstract long getCurrentTimeInMillis();
+
+    /**
+     * Schedules a task on behalf of a particular node
+     *
+     * @param node The node the task belongs to
+     * @param delay The delay in milliseconds after which the task is run
+     * @param task The task to be run
+     */
+    public abstract void schedule(Node node, long delay, Runnable task);
+
+    /**
+     * Runs a task on behalf of a particular node as soon as possible
+     *
+     * @param node The node the task belongs to
+     * @param task The task to be run
+     */
+    public void execute(Node node, Runnable task) {
+        this.schedule(node, 0, task);
+    }
+
+    /**
+     * Keeps the tasks of a node on the same thread as those of another one
+     * Nodes whose tasks touch each other's state directly, instead of
+     * through the link, must be colocated on schedulers running tasks of
+     * different nodes in parallel. Has no effect by default.
+     *
+     * @param node The node to join
+     * @param other The node to move next to it
+     */
+    public void colocate(Node node, Node other) {
+    }
+
+    /**
+     * Checks whether tasks are allowed to block their thread, for example by
+     * waiting on a blocking MAC address resolution
+     *
+     * @return Whether blocking is allowed or not
+     */
+    public abstract boolean supportsBlocking();
+
+    /**
+     * Runs the scheduled tasks and returns once no more work is left
+     */
+    public abstract void run();
+}
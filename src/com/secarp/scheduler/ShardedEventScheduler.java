@@ -0,0 +1,338 @@
+package com.secarp.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.secarp.common.Timer;
+import com.secarp.device.Node;
+
+/**
+ * A discrete event scheduler spreading the nodes over shards, each run by a
+ * thread of its own with an event queue of its own
+ * The shards advance in windows as long as the lookahead, the least delay
+ * with which a task of one node can affect another. Every window starts at
+ * the time of the earliest pending event of all shards, so an event one
+ * shard schedules for another always falls in a later window. Such events
+ * travel through a lock-free channel per pair of shards and are taken in
+ * between windows.
+ *
+ * The events of each node are processed in the same order as on an
+ * EventScheduler, so a run gives the same results as a sequential one with
+ * the same seeds, as long as tasks only touch the state of their own node,
+ * or of nodes colocated with it. Only the order of log and trace records of
+ * different shards differs.
+ *
+ * Tasks must not block. Events may be scheduled from outside of tasks only
+ * while the scheduler is not running.
+ */
+public class ShardedEventScheduler extends Scheduler {
+    /**
+     * The nodes, event queue and clock of one thread
+     */
+    private final class Shard implements Runnable {
+        // The position of the shard
+        final int index;
+
+        // The pending events of the nodes of the shard, ordered by time
+        final PriorityQueue<Event> events;
+
+        // The events sent by each other shard, by their index
+        final SpscChannel<Event>[] inbound;
+
+        // The number of events scheduled so far by each node of the shard
+        final SourceSequences sequences;
+
+        // The current simulated time of the shard in milliseconds
+        long currentTime;
+
+        // The id of the node whose task is running, -1 outside of tasks
+        int currentSource;
+
+        // The time of the earliest pending event when a window starts
+        long nextTime;
+
+        /**
+         * Constructor function
+         */
+        Shard(int index, int count) {
+            this.index = index;
+            this.events = new PriorityQueue<Event>();
+            this.inbound = newChannels(count);
+            for (int i = 0; i < count; i++) {
+                this.inbound[i] = new SpscChannel<Event>();
+            }
+            this.sequences = new SourceSequences();
+            this.currentSource = -1;
+        }
+
+        /**
+         * Processes windows of events until no shard has any left
+         */
+        @Override
+        public void run() {
+            ShardedEventScheduler scheduler = ShardedEventScheduler.this;
+            Timer.setScheduler(scheduler);
+            scheduler.currentShard.set(this);
+            try {
+                while (true) {
+                    for (SpscChannel<Event> channel : this.inbound) {
+                        Event event;
+                        while ((event = channel.poll()) != null) {
+                            this.events.add(event);
+                        }
+                    }
+                    Event next = this.events.peek();
+                    this.nextTime = next == null ? Long.MAX_VALUE
+                                                 : next.getTime();
+                    if (scheduler.phaser.arriveAndAwaitAdvance() < 0) {
+                        return;
+                    }
+                    long startTime = Long.MAX_VALUE;
+                    for (Shard shard : scheduler.shards) {
+                        startTime = Math.min(startTime, shard.nextTime);
+                    }
+                    if (startTime == Long.MAX_VALUE) {
+                        return;
+                    }
+                    long endTime = startTime + scheduler.lookahead;
+                    while ((next = this.events.peek()) != null &&
+                           next.getTime() < endTime) {
+                        this.events.poll();
+                        this.currentTime = next.getTime();
+                        this.currentSource =
+                            SourceSequences.sourceOf(next.getNode());
+                        next.getTask().run();
+                    }
+                    this.currentSource = -1;
+                    if (scheduler.phaser.arriveAndAwaitAdvance() < 0) {
+                        return;
+                    }
+                }
+            } catch (Throwable e) {
+                scheduler.failure.compareAndSet(null, e);
+                scheduler.phaser.forceTermination();
+            } finally {
+                this.currentSource = -1;
+                scheduler.currentShard.remove();
+                Timer.setScheduler(null);
+            }
+        }
+    }
+
+    // The shards
+    private final Shard[] shards;
+
+    // The least delay, in milliseconds, of an event for a node of another
+    // shard
+    private final long lookahead;
+
+    // The shard of the nodes placed explicitly
+    private final Map<Node, Integer> placement;
+
+    // The shard run by the current thread
+    private final ThreadLocal<Shard> currentShard;
+
+    // The number of events scheduled so far from outside of tasks
+    private final SourceSequences sequences;
+
+    // The time the last run ended at, in milliseconds
+    private long currentTime;
+
+    // Synchronizes the shards at the bounds of every window
+    private Phaser phaser;
+
+    // The first error thrown by a task during a run
+    private final AtomicReference<Throwable> failure;
+
+    /**
+     * Constructor function
+     * The lookahead is the transmission delay of a node
+     *
+     * @param shards The number of shards
+     */
+    public ShardedEventScheduler(int shards) {
+        this(shards, Node.TRANSMISSION_DELAY);
+    }
+
+    /**
+     * Constructor function
+     *
+     * @param shards The number of shards
+     * @param lookahead The least delay, in milliseconds, with which a task of
+     * one node schedules an event for a node of another shard
+     */
+    public ShardedEventScheduler(int shards, long lookahead) {
+        if (shards < 1) {
+            throw new IllegalArgumentException(
+                "Number of shards must be positive");
+        }
+        if (lookahead < 1) {
+            throw new IllegalArgumentException("Lookahead must be positive");
+        }
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i, shards);
+        }
+        this.lookahead = lookahead;
+        this.placement = new HashMap<Node, Integer>();
+        this.currentShard = new ThreadLocal<Shard>();
+        this.sequences = new SourceSequences();
+        this.currentTime = 0;
+        this.failure = new AtomicReference<Throwable>();
+    }
+
+    /**
+     * Getter for the number of shards
+     */
+    public int getShards() {
+        return this.shards.length;
+    }
+
+    /**
+     * Getter for lookahead
+     */
+    public long getLookahead() {
+        return this.lookahead;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The clock of the shard of the running task, or the time the last run
+     * ended at outside of tasks
+     */
+    @Override
+    public long getCurrentTimeInMillis() {
+        Shard shard = this.currentShard.get();
+        return shard == null ? this.currentTime : shard.currentTime;
+    }
+
+    /**
+     * {@inheritDoc}
+     * A task may schedule an event for a node of another shard only with at
+     * least the lookahead as delay
+     */
+    @Override
+    public void schedule(Node node, long delay, Runnable task) {
+        Shard target = this.shards[this.shardOf(node)];
+        Shard shard = this.currentShard.get();
+        if (shard == null) {
+            target.events.add(new Event(this.currentTime + delay,
+                                        -1,
+                                        this.sequences.next(-1),
+                                        node,
+                                        task
+                                        ));
+            return;
+        }
+        Event event = new Event(shard.currentTime + delay,
+                                shard.currentSource,
+                                shard.sequences.next(shard.currentSource),
+                                node,
+                                task
+                                );
+        if (target == shard) {
+            shard.events.add(event);
+        } else if (delay < this.lookahead) {
+            throw new IllegalStateException(
+                "Delay of " + delay + "ms for a node of another shard is "
+                + "below the lookahead of " + this.lookahead + "ms");
+        } else {
+            target.inbound[shard.index].offer(event);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Places the second node on the shard of the first one
+     */
+    @Override
+    public void colocate(Node node, Node other) {
+        this.placement.put(other, this.shardOf(node));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsBlocking() {
+        return false;
+    }
+
+    /**
+     * Processes events in order of time until no shard has any left
+     * The first shard runs on the calling thread. While running, Timer
+     * reports the simulated time of its shard on each thread.
+     */
+    @Override
+    public void run() {
+        this.phaser = new Phaser(this.shards.length);
+        Thread[] threads = new Thread[this.shards.length - 1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(this.shards[i + 1], "shard-" + (i + 1));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        this.shards[0].run();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.phaser.forceTermination();
+            }
+        }
+        for (Shard shard : this.shards) {
+            this.currentTime = Math.max(this.currentTime, shard.currentTime);
+        }
+        Throwable failure = this.failure.getAndSet(null);
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be processed
+     * Only meaningful while the scheduler is not running
+     *
+     * @return The number of pending events
+     */
+    public int getPendingEvents() {
+        int pending = 0;
+        for (Shard shard : this.shards) {
+            pending += shard.events.size();
+        }
+        return pending;
+    }
+
+    /**
+     * Returns the shard of a node
+     * Nodes not placed explicitly are spread round robin by id
+     */
+    private int shardOf(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        if (!this.placement.isEmpty()) {
+            Integer shard = this.placement.get(node);
+            if (shard != null) {
+                return shard;
+            }
+        }
+        return Math.floorMod(node.getId(), this.shards.length);
+    }
+
+    /**
+     * Creates an array of event channels
+     * Arrays of a generic type can only be created raw
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static SpscChannel<Event>[] newChannels(int length) {
+        return new SpscChannel[length];
+    }
+}
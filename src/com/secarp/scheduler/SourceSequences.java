@@ -0,0 +1,50 @@
+package com.secarp.scheduler;
+
+import java.util.Arrays;
+
+import com.secarp.device.Node;
+
+/**
+ * The number of events scheduled so far by each source, by node id
+ * Source -1 stands for everything scheduled from outside a task.
+ */
+class SourceSequences {
+    // The initial number of sources tracked
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The next sequence of each source, shifted by one for source -1
+    private long[] sequences;
+
+    /**
+     * Constructor function
+     */
+    SourceSequences() {
+        this.sequences = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the source standing for the node of a task
+     *
+     * @param node The node the task belongs to, may be null
+     * @return The id of the node, -1 if there is none
+     */
+    static int sourceOf(Node node) {
+        return node == null ? -1 : node.getId();
+    }
+
+    /**
+     * Returns the next sequence of a source
+     *
+     * @param source The id of the node scheduling an event, -1 for none
+     * @return The number of events the source scheduled before this one
+     */
+    long next(int source) {
+        int index = source + 1;
+        if (index >= this.sequences.length) {
+            this.sequences = Arrays.copyOf(
+                this.sequences,
+                Math.max(index + 1, 2 * this.sequences.length));
+        }
+        return this.sequences[index]++;
+    }
+}
@@ -0,0 +1,85 @@
+package com.secarp.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An unbounded lock-free queue between one producer thread and one consumer
+ * thread
+ * Items are written to fixed-size chunks linked one after the other, so the
+ * producer never waits for the consumer. An item becomes visible to the
+ * consumer once the count of published items covers it.
+ */
+class SpscChannel<E> {
+    // The number of items in a chunk
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * A block of items, linked to the one written after it
+     */
+    private static final class Chunk {
+        // The items
+        final Object[] items = new Object[CHUNK_SIZE];
+
+        // The next chunk, set by the producer before publishing into it
+        volatile Chunk next;
+    }
+
+    // The chunk being written to, and the next free slot in it; producer only
+    private Chunk tail;
+    private int tailIndex;
+    private long produced;
+
+    // The chunk being read from, and the next slot to read; consumer only
+    private Chunk head;
+    private int headIndex;
+    private long consumed;
+
+    // The number of items published by the producer
+    private final AtomicLong published;
+
+    /**
+     * Constructor function
+     */
+    SpscChannel() {
+        this.tail = new Chunk();
+        this.head = this.tail;
+        this.published = new AtomicLong();
+    }
+
+    /**
+     * Adds an item, only ever called from the producer thread
+     *
+     * @param item The item to be added
+     */
+    void offer(E item) {
+        if (this.tailIndex == CHUNK_SIZE) {
+            Chunk chunk = new Chunk();
+            this.tail.next = chunk;
+            this.tail = chunk;
+            this.tailIndex = 0;
+        }
+        this.tail.items[this.tailIndex++] = item;
+        this.published.lazySet(++this.produced);
+    }
+
+    /**
+     * Removes the oldest published item, only ever called from the consumer
+     * thread
+     *
+     * @return The item, null if none is published
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        if (this.consumed == this.published.get()) {
+            return null;
+        }
+        if (this.headIndex == CHUNK_SIZE) {
+            this.head = this.head.next;
+            this.headIndex = 0;
+        }
+        E item = (E)this.head.items[this.headIndex];
+        this.head.items[this.headIndex++] = null;
+        this.consumed++;
+        return item;
+    }
+}
@@ -0,0 +1,42 @@
+package com.secarp.scheduler;
+
+import com.secarp.common.Timer;
+import com.secarp.device.Node;
+
+/**
+ * Runs every task in a thread of its own, in real time
+ * Delayed tasks sleep in their thread before running. This is the original
+ * execution model of the simulator and the default one of a network.
+ */
+public class ThreadScheduler extends RealTimeScheduler {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void schedule(Node node, long delay, Runnable task) {
+        this.taskScheduled();
+        // Spawning a new thread
+        // The good old Java way :)
+        new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (delay > 0) {
+                            Timer.sleep(delay);
+                        }
+                        task.run();
+                    } finally {
+                        taskFinished();
+                    }
+                }
+            }).start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsBlocking() {
+        return true;
+    }
+}
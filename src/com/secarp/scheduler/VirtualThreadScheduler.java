@@ -0,0 +1,89 @@
+package com.secarp.scheduler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.secarp.common.Timer;
+import com.secarp.device.Node;
+
+/**
+ * Runs every task in a virtual thread of its own, in real time
+ * Same model as ThreadScheduler, but a sleeping or blocked task no longer
+ * holds on to a platform thread, so blocking resolution stays cheap even with
+ * a huge number of packets in flight.
+ *
+ * Virtual threads need Java 21. They are looked up reflectively, so that the
+ * sources still build for older JVMs.
+ */
+public class VirtualThreadScheduler extends RealTimeScheduler {
+    // Runs each task in a new virtual thread
+    private ExecutorService executor;
+
+    /**
+     * Constructor function
+     *
+     * @throws UnsupportedOperationException If the JVM has no virtual threads
+     */
+    public VirtualThreadScheduler() {
+        try {
+            this.executor = (ExecutorService)Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (NoSuchMethodException |
+                 IllegalAccessException |
+                 InvocationTargetException e) {
+            throw new UnsupportedOperationException(
+                "Virtual threads need Java 21 or later", e);
+        }
+    }
+
+    /**
+     * Checks whether the running JVM supports virtual threads
+     *
+     * @return Whether the scheduler can be used
+     */
+    public static boolean isAvailable() {
+        try {
+            Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void schedule(Node node, long delay, Runnable task) {
+        this.taskScheduled();
+        this.executor.execute(() -> {
+                try {
+                    if (delay > 0) {
+                        Timer.sleep(delay);
+                    }
+                    task.run();
+                } finally {
+                    this.taskFinished();
+                }
+            });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportsBlocking() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void shutdown() {
+        this.executor.shutdown();
+    }
+}
@@ -0,0 +1,68 @@
+package com.secarp.trace;
+
+import com.secarp.address.Ipv4Address;
+
+/**
+ * Selects the trace records to read back
+ * By default, every record is selected
+ */
+public class TraceFilter {
+    // Id of the node the records should be about, -1 for all the nodes
+    private int nodeId = -1;
+
+    // The IP the records should be about, null for all the IPs
+    private Ipv4Address ipv4Address;
+
+    // The time range, in milliseconds, of the records, both ends included
+    private long fromTime = Long.MIN_VALUE;
+    private long toTime = Long.MAX_VALUE;
+
+    /**
+     * Getter and setter functions
+     */
+    public int getNodeId() {
+        return this.nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Ipv4Address getIpv4Address() {
+        return this.ipv4Address;
+    }
+
+    public void setIpv4Address(Ipv4Address ipv4Address) {
+        this.ipv4Address = ipv4Address;
+    }
+
+    public long getFromTime() {
+        return this.fromTime;
+    }
+
+    public long getToTime() {
+        return this.toTime;
+    }
+
+    public void setTimeRange(long fromTime, long toTime) {
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+    }
+
+    /**
+     * Checks whether a record is selected
+     *
+     * @param record The record
+     * @return Whether it is selected
+     */
+    public boolean matches(TraceRecord record) {
+        if (this.nodeId != -1 && record.getNodeId() != this.nodeId) {
+            return false;
+        }
+        long time = record.getTime();
+        if (time < this.fromTime || time > this.toTime) {
+            return false;
+        }
+        return this.ipv4Address == null || record.involves(this.ipv4Address);
+    }
+}
@@ -0,0 +1,95 @@
+package com.secarp.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import com.secarp.address.Ipv4Address;
+
+/**
+ * Streams a recorded trace back, one file at a time
+ * The files are mapped rather than read, so only the parts being looked at
+ * are brought into memory
+ */
+public class TraceReader {
+    // The path of the trace, without the number of the file
+    private String path;
+
+    /**
+     * Constructor function
+     *
+     * @param path The path of the trace, without the number of the file
+     */
+    public TraceReader(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Hands the selected records to a consumer, in the order they were
+     * recorded
+     * The record handed over is only valid during the call
+     *
+     * @param filter Selects the records
+     * @param consumer The consumer of the records
+     */
+    public void read(TraceFilter filter,
+                     Consumer<TraceRecord> consumer) throws IOException {
+        TraceRecord record = new TraceRecord();
+        for (int segmentNumber = 0; ; segmentNumber++) {
+            File file = new File(
+                TraceRecorder.segmentPath(this.path, segmentNumber));
+            if (!file.exists()) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                        StandardOpenOption.READ)) {
+                MappedByteBuffer segment =
+                    channel.map(FileChannel.MapMode.READ_ONLY,
+                                0,
+                                channel.size());
+                for (int offset = 0;
+                     offset + TraceRecord.RECORD_SIZE <= segment.capacity() &&
+                         TraceRecord.isWritten(segment, offset);
+                     offset += TraceRecord.RECORD_SIZE) {
+                    record.wrap(segment, offset);
+                    if (filter.matches(record)) {
+                        consumer.accept(record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints a trace
+     * Usage: TraceReader path [-node id] [-ip address] [-from ms] [-to ms]
+     */
+    public static void main(String args[]) throws IOException {
+        TraceFilter filter = new TraceFilter();
+        long fromTime = Long.MIN_VALUE;
+        long toTime = Long.MAX_VALUE;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+            case "-node":
+                filter.setNodeId(Integer.parseInt(args[i + 1]));
+                break;
+            case "-ip":
+                filter.setIpv4Address(Ipv4Address.valueOf(args[i + 1]));
+                break;
+            case "-from":
+                fromTime = Long.parseLong(args[i + 1]);
+                break;
+            case "-to":
+                toTime = Long.parseLong(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        filter.setTimeRange(fromTime, toTime);
+        new TraceReader(args[0]).read(filter, System.out::println);
+    }
+}
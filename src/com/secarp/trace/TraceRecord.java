@@ -0,0 +1,211 @@
+package com.secarp.trace;
+
+import java.nio.ByteBuffer;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.protocol.arp.ArpType;
+
+/**
+ * A view over a fixed-size binary trace record
+ * Reading a record does not copy it, so a record is only valid till the
+ * view moves on to the next one
+ *
+ * Layout of a record:
+ * time (8), node (4), record type (1), kind (1), ARP type (1), flags (1),
+ * sequence number (4), sender IP (4), sender MAC (8), receiver MAC (8),
+ * receiver IP (4), unused (4)
+ */
+public class TraceRecord {
+    // Values of the record type, fixed as they are stored in the files
+    // 0 marks unwritten space, and 3 is not used
+    public static final byte PACKET_SENT = 1;
+    public static final byte PACKET_RECEIVED = 2;
+    public static final byte CACHE_PUT = 4;
+    public static final byte CONFLICT_CHECK = 5;
+
+    // Values of the kind of a packet record
+    public static final byte NO_HEADER = 0;
+    public static final byte ARP_HEADER = 1;
+    public static final byte SEC_ARP_HEADER = 2;
+
+    // Values of the kind of a cache record
+    public static final byte ARP_CACHE = 0;
+    public static final byte L1_CACHE = 1;
+    public static final byte L2_CACHE = 2;
+
+    // Layout of a record
+    static final int TIME_OFFSET = 0;
+    static final int NODE_OFFSET = 8;
+    static final int RECORD_TYPE_OFFSET = 12;
+    static final int KIND_OFFSET = 13;
+    static final int ARP_TYPE_OFFSET = 14;
+    static final int FLAGS_OFFSET = 15;
+    static final int SEQUENCE_NUMBER_OFFSET = 16;
+    static final int SENDER_IP_OFFSET = 20;
+    static final int SENDER_MAC_OFFSET = 24;
+    static final int RECEIVER_MAC_OFFSET = 32;
+    static final int RECEIVER_IP_OFFSET = 40;
+    static final int RECORD_SIZE = 48;
+
+    // Flood flag of a SecArp packet, or the outcome of a conflict check
+    static final byte FLAG = 0x01;
+
+    // The buffer holding the record
+    private ByteBuffer buffer;
+
+    // The offset of the record in the buffer
+    private int offset;
+
+    /**
+     * Points the view at a record
+     *
+     * @param buffer The buffer holding the record
+     * @param offset The offset of the record in the buffer
+     * @return This view
+     */
+    TraceRecord wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Checks whether a record has been written at an offset
+     * Unwritten space is zeroed, and a written record type is never 0
+     */
+    static boolean isWritten(ByteBuffer buffer, int offset) {
+        return buffer.get(offset + RECORD_TYPE_OFFSET) != 0;
+    }
+
+    /**
+     * Returns the time of the event
+     *
+     * @return The scheduler time in milliseconds
+     */
+    public long getTime() {
+        return this.buffer.getLong(this.offset + TIME_OFFSET);
+    }
+
+    /**
+     * Returns the id of the node the event happened on
+     */
+    public int getNodeId() {
+        return this.buffer.getInt(this.offset + NODE_OFFSET);
+    }
+
+    /**
+     * Returns the type of the record, one of the record types above
+     */
+    public byte getType() {
+        return this.buffer.get(this.offset + RECORD_TYPE_OFFSET);
+    }
+
+    /**
+     * Returns the kind of header of a packet, or the cache of a cache put
+     */
+    public byte getKind() {
+        return this.buffer.get(this.offset + KIND_OFFSET);
+    }
+
+    public ArpType getArpType() {
+        return ArpType.values()[this.buffer.get(this.offset + ARP_TYPE_OFFSET)];
+    }
+
+    /**
+     * Returns the flood flag of a SecArp packet
+     */
+    public boolean isArpFloodFlag() {
+        return (this.buffer.get(this.offset + FLAGS_OFFSET) & FLAG) != 0;
+    }
+
+    /**
+     * Returns whether a conflict check found a conflict
+     */
+    public boolean isConflict() {
+        return (this.buffer.get(this.offset + FLAGS_OFFSET) & FLAG) != 0;
+    }
+
+    public int getSequenceNumber() {
+        return this.buffer.getInt(this.offset + SEQUENCE_NUMBER_OFFSET);
+    }
+
+    /**
+     * Returns the sender IP of a packet, or the IP put in a cache
+     */
+    public Ipv4Address getSenderIp() {
+        return Ipv4Address.valueOf(
+            this.buffer.getInt(this.offset + SENDER_IP_OFFSET));
+    }
+
+    /**
+     * Returns the sender MAC of a packet, or the MAC put in a cache
+     */
+    public MacAddress getSenderMac() {
+        return MacAddress.valueOf(
+            this.buffer.getLong(this.offset + SENDER_MAC_OFFSET));
+    }
+
+    public MacAddress getReceiverMac() {
+        return MacAddress.valueOf(
+            this.buffer.getLong(this.offset + RECEIVER_MAC_OFFSET));
+    }
+
+    /**
+     * Returns the receiver IP of a packet, or the IP a conflict check was
+     * about
+     */
+    public Ipv4Address getReceiverIp() {
+        return Ipv4Address.valueOf(
+            this.buffer.getInt(this.offset + RECEIVER_IP_OFFSET));
+    }
+
+    /**
+     * Checks whether the record is about an IP, as sender or receiver
+     *
+     * @param ipv4Address The IP
+     * @return Whether the record is about the IP
+     */
+    public boolean involves(Ipv4Address ipv4Address) {
+        int ip = ipv4Address.toInt();
+        return this.buffer.getInt(this.offset + SENDER_IP_OFFSET) == ip ||
+            this.buffer.getInt(this.offset + RECEIVER_IP_OFFSET) == ip;
+    }
+
+    @Override
+    public String toString() {
+        byte type = this.getType();
+        String text = this.getTime() + "ms node " + this.getNodeId() + " ";
+        switch (type) {
+        case PACKET_SENT:
+        case PACKET_RECEIVED:
+            text += type == PACKET_SENT ? "PACKET_SENT" : "PACKET_RECEIVED";
+            if (this.getKind() == NO_HEADER) {
+                return text;
+            }
+            return text + " " + this.getArpType() +
+                (this.getKind() == SEC_ARP_HEADER
+                 ? " #" + this.getSequenceNumber() +
+                 (this.isArpFloodFlag() ? " flood" : "")
+                 : "") +
+                " " + Ipv4Address.format(
+                    this.buffer.getInt(this.offset + SENDER_IP_OFFSET)) +
+                " -> " + Ipv4Address.format(
+                    this.buffer.getInt(this.offset + RECEIVER_IP_OFFSET));
+        case CACHE_PUT:
+            return text + "ARP_CACHE_PUT " +
+                (this.getKind() == ARP_CACHE ? "Arp"
+                 : this.getKind() == L1_CACHE ? "L1" : "L2") +
+                " " + Ipv4Address.format(
+                this.buffer.getInt(this.offset + SENDER_IP_OFFSET)) +
+                " " + MacAddress.format(
+                    this.buffer.getLong(this.offset + SENDER_MAC_OFFSET));
+        case CONFLICT_CHECK:
+            return text + "CONFLICT_CHECK " + Ipv4Address.format(
+                this.buffer.getInt(this.offset + RECEIVER_IP_OFFSET)) +
+                (this.isConflict() ? " clash" : " no clash");
+        default:
+            return text + type;
+        }
+    }
+}
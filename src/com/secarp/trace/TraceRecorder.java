@@ -0,0 +1,431 @@
+package com.secarp.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.secarp.address.Ipv4Address;
+import com.secarp.address.MacAddress;
+import com.secarp.protocol.Packet;
+import com.secarp.protocol.arp.ArpHeader;
+import com.secarp.protocol.arp.ArpType;
+import com.secarp.protocol.secarp.SecArpHeader;
+
+/**
+ * Records events as fixed-size binary records into memory-mapped files
+ * The trace rolls over to a new file, path.0, path.1 and so on, whenever
+ * the current one is full. Recording an event claims the index of its record
+ * with an atomic counter and writes a few stores into the mapped file, so
+ * recording threads never wait on each other, nor for the disk: the
+ * operating system writes the files back, and only close() forces the last
+ * one. The first thread needing a new file maps it under the lock of the
+ * recorder. A thread writing a record claimed before the file rolled over
+ * uses the previous mapping, or maps the file again if it lags further.
+ */
+public class TraceRecorder implements Closeable {
+    // The system property setting the path of the trace, no trace is
+    // recorded when it is not set
+    public static final String TRACE_PROPERTY = "secarp.trace";
+
+    // The system property setting the size of a trace file in bytes
+    public static final String TRACE_SEGMENT_SIZE_PROPERTY =
+        "secarp.trace.segment";
+
+    // The default size of a trace file in bytes
+    private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    // The recorder selected by the system properties
+    private static TraceRecorder systemRecorder;
+
+    /**
+     * A mapped trace file
+     */
+    private static class Segment {
+        // The number of the file
+        final int number;
+
+        // The channel of the file
+        final FileChannel channel;
+
+        // The mapped file
+        final MappedByteBuffer buffer;
+
+        // The file before, kept for records claimed before it was full
+        volatile Segment previous;
+
+        Segment(int number, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    // The path of the trace, without the number of the file
+    private final String path;
+
+    // The size of a trace file in bytes, a multiple of the record size
+    private final int segmentSize;
+
+    // The number of records in a trace file
+    private final int segmentRecords;
+
+    // The index of the next record, counted across all the files
+    private final AtomicLong claimed;
+
+    // The current file
+    private volatile Segment segment;
+
+    // Whether the recorder has been closed
+    private volatile boolean closed;
+
+    /**
+     * Constructor function
+     * Creates the first trace file
+     *
+     * @param path The path of the trace, without the number of the file
+     * @param segmentSize The size of a trace file in bytes
+     */
+    public TraceRecorder(String path, int segmentSize) throws IOException {
+        if (segmentSize < TraceRecord.RECORD_SIZE) {
+            throw new IllegalArgumentException(
+                "Trace file size must fit at least one record");
+        }
+        this.path = path;
+        this.segmentRecords = segmentSize / TraceRecord.RECORD_SIZE;
+        this.segmentSize = this.segmentRecords * TraceRecord.RECORD_SIZE;
+        this.claimed = new AtomicLong();
+        this.segment = this.map(0);
+    }
+
+    /**
+     * Returns the recorder selected by the secarp.trace system property
+     * The same recorder is returned every time, and closed when the JVM
+     * exits
+     *
+     * @return The recorder, null if no trace should be recorded
+     */
+    public static synchronized TraceRecorder fromSystemProperties() {
+        String path = System.getProperty(TRACE_PROPERTY);
+        if (path == null) {
+            return null;
+        }
+        if (systemRecorder == null) {
+            try {
+                systemRecorder = new TraceRecorder(
+                    path,
+                    Integer.getInteger(TRACE_SEGMENT_SIZE_PROPERTY,
+                                       DEFAULT_SEGMENT_SIZE));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(systemRecorder::close));
+        }
+        return systemRecorder;
+    }
+
+    /**
+     * Returns the path of a trace file
+     *
+     * @param path The path of the trace
+     * @param segmentNumber The number of the file
+     * @return The path of the file
+     */
+    static String segmentPath(String path, int segmentNumber) {
+        return path + "." + segmentNumber;
+    }
+
+    /**
+     * Records a packet sent or received by a node
+     *
+     * @param time The scheduler time in milliseconds
+     * @param nodeId The id of the node
+     * @param sent Whether the packet is sent or received
+     * @param packet The packet
+     */
+    public void recordPacket(long time,
+                             int nodeId,
+                             boolean sent,
+                             Packet packet) {
+        long index = this.claim();
+        ByteBuffer buffer = this.bufferOf(index);
+        if (buffer == null) {
+            return;
+        }
+        int offset = this.offsetOf(index);
+        if (packet.getHeader() instanceof ArpHeader) {
+            ArpHeader header = (ArpHeader)packet.getHeader();
+            buffer.put(offset + TraceRecord.KIND_OFFSET,
+                       TraceRecord.ARP_HEADER);
+            putAddresses(buffer,
+                         offset,
+                         header.getArpType(),
+                         header.getSenderMac(),
+                         header.getSenderIp(),
+                         header.getReceiverMac(),
+                         header.getReceiverIp()
+                         );
+        } else if (packet.getHeader() instanceof SecArpHeader) {
+            SecArpHeader header = (SecArpHeader)packet.getHeader();
+            buffer.put(offset + TraceRecord.KIND_OFFSET,
+                       TraceRecord.SEC_ARP_HEADER);
+            buffer.put(offset + TraceRecord.FLAGS_OFFSET,
+                       header.isArpFloodFlag() ? TraceRecord.FLAG : 0);
+            buffer.putInt(offset + TraceRecord.SEQUENCE_NUMBER_OFFSET,
+                          header.getSequenceNumber());
+            putAddresses(buffer,
+                         offset,
+                         header.getArpType(),
+                         header.getSenderMac(),
+                         header.getSenderIp(),
+                         header.getReceiverMac(),
+                         header.getReceiverIp()
+                         );
+        }
+        putCommon(buffer,
+                  offset,
+                  time,
+                  nodeId,
+                  sent ? TraceRecord.PACKET_SENT : TraceRecord.PACKET_RECEIVED);
+    }
+
+    /**
+     * Records an IP Mac pair put in a cache
+     *
+     * @param time The scheduler time in milliseconds
+     * @param nodeId The id of the node owning the cache
+     * @param cache The cache, one of the cache kinds of TraceRecord
+     * @param ipv4Address The IP
+     * @param macAddress The Mac
+     */
+    public void recordCachePut(long time,
+                               int nodeId,
+                               byte cache,
+                               Ipv4Address ipv4Address,
+                               MacAddress macAddress) {
+        long index = this.claim();
+        ByteBuffer buffer = this.bufferOf(index);
+        if (buffer == null) {
+            return;
+        }
+        int offset = this.offsetOf(index);
+        buffer.put(offset + TraceRecord.KIND_OFFSET, cache);
+        buffer.putInt(offset + TraceRecord.SENDER_IP_OFFSET,
+                      ipv4Address.toInt());
+        buffer.putLong(offset + TraceRecord.SENDER_MAC_OFFSET,
+                       macAddress.toLong());
+        putCommon(buffer, offset, time, nodeId, TraceRecord.CACHE_PUT);
+    }
+
+    /**
+     * Records the outcome of a conflict check of SecArp
+     *
+     * @param time The scheduler time in milliseconds
+     * @param nodeId The id of the node resolving the IP
+     * @param ipv4Address The IP being resolved
+     * @param conflict Whether more than one MAC replied
+     */
+    public void recordConflictCheck(long time,
+                                    int nodeId,
+                                    Ipv4Address ipv4Address,
+                                    boolean conflict) {
+        long index = this.claim();
+        ByteBuffer buffer = this.bufferOf(index);
+        if (buffer == null) {
+            return;
+        }
+        int offset = this.offsetOf(index);
+        buffer.put(offset + TraceRecord.FLAGS_OFFSET,
+                   conflict ? TraceRecord.FLAG : 0);
+        buffer.putInt(offset + TraceRecord.RECEIVER_IP_OFFSET,
+                      ipv4Address.toInt());
+        putCommon(buffer, offset, time, nodeId, TraceRecord.CONFLICT_CHECK);
+    }
+
+    /**
+     * Writes everything recorded to disk and trims the last trace file
+     * Events recorded afterwards are dropped
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        // Records claimed from now on are dropped
+        long claimed = this.claimed.getAndSet(Long.MAX_VALUE / 2);
+        Segment segment = this.segment;
+        long records = claimed - (long)segment.number * this.segmentRecords;
+        try {
+            segment.buffer.force();
+            segment.channel.truncate(Math.min(records, this.segmentRecords) *
+                                     TraceRecord.RECORD_SIZE);
+            segment.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Claims the index of the next record
+     *
+     * @return The index, counted across all the files, -1 if the recorder
+     * is closed
+     */
+    private long claim() {
+        if (this.closed) {
+            return -1;
+        }
+        return this.claimed.getAndIncrement();
+    }
+
+    /**
+     * Returns the mapped file holding a record, mapping it if needed
+     *
+     * @param index The index of the record
+     * @return The buffer of the file, null if the recorder is closed
+     */
+    private ByteBuffer bufferOf(long index) {
+        if (index < 0) {
+            return null;
+        }
+        long number = index / this.segmentRecords;
+        Segment segment = this.segment;
+        if (segment.number < number) {
+            segment = this.roll(number);
+            if (segment == null) {
+                return null;
+            }
+        }
+        if (segment.number > number) {
+            // The files rolled over since the record was claimed
+            Segment previous = segment.previous;
+            if (previous == null || previous.number != number) {
+                return this.remap((int)number);
+            }
+            segment = previous;
+        }
+        return segment.buffer;
+    }
+
+    /**
+     * Returns the offset of a record in its file
+     *
+     * @param index The index of the record
+     * @return The offset
+     */
+    private int offsetOf(long index) {
+        return (int)(index % this.segmentRecords) * TraceRecord.RECORD_SIZE;
+    }
+
+    /**
+     * Writes the fields common to all the records
+     * The record type goes last, as it marks the record as written
+     */
+    private static void putCommon(ByteBuffer buffer,
+                                  int offset,
+                                  long time,
+                                  int nodeId,
+                                  byte type) {
+        buffer.putLong(offset + TraceRecord.TIME_OFFSET, time);
+        buffer.putInt(offset + TraceRecord.NODE_OFFSET, nodeId);
+        buffer.put(offset + TraceRecord.RECORD_TYPE_OFFSET, type);
+    }
+
+    /**
+     * Writes the addresses of an ARP header into a record
+     */
+    private static void putAddresses(ByteBuffer buffer,
+                                     int offset,
+                                     ArpType arpType,
+                                     MacAddress senderMac,
+                                     Ipv4Address senderIp,
+                                     MacAddress receiverMac,
+                                     Ipv4Address receiverIp
+                                     ) {
+        buffer.put(offset + TraceRecord.ARP_TYPE_OFFSET,
+                   (byte)arpType.ordinal());
+        buffer.putInt(offset + TraceRecord.SENDER_IP_OFFSET, senderIp.toInt());
+        buffer.putLong(offset + TraceRecord.SENDER_MAC_OFFSET,
+                       senderMac.toLong());
+        buffer.putLong(offset + TraceRecord.RECEIVER_MAC_OFFSET,
+                       receiverMac.toLong());
+        buffer.putInt(offset + TraceRecord.RECEIVER_IP_OFFSET,
+                      receiverIp.toInt());
+    }
+
+    /**
+     * Maps the trace files up to a number, unless another thread did
+     * The files left behind are not forced, the operating system writes
+     * them back; only the one before the current file stays reachable
+     *
+     * @param number The number of the file
+     * @return The current file, null if the recorder is closed
+     */
+    private synchronized Segment roll(long number) {
+        if (this.closed) {
+            return null;
+        }
+        Segment segment = this.segment;
+        try {
+            while (segment.number < number) {
+                Segment next = this.map(segment.number + 1);
+                segment.previous = null;
+                next.previous = segment;
+                // The mapping stays valid once the channel is closed
+                segment.channel.close();
+                segment = next;
+                this.segment = segment;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return segment;
+    }
+
+    /**
+     * Maps again a trace file left behind, for a record claimed long before
+     * it was written
+     *
+     * @param number The number of the file
+     * @return The buffer of the file
+     */
+    private ByteBuffer remap(int number) {
+        try (FileChannel channel = FileChannel.open(
+                 Paths.get(segmentPath(this.path, number)),
+                 StandardOpenOption.READ,
+                 StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE,
+                               0,
+                               this.segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates and maps a trace file
+     *
+     * @param number The number of the file
+     * @return The file
+     */
+    private Segment map(int number) throws IOException {
+        FileChannel channel = FileChannel.open(
+            Paths.get(segmentPath(this.path, number)),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        return new Segment(number,
+                           channel,
+                           channel.map(FileChannel.MapMode.READ_WRITE,
+                                       0,
+                                       this.segmentSize));
+    }
+}